@@ -1,5 +1,6 @@
 package com.juankysoriano.rainbow.core;
 
+import android.graphics.Bitmap;
 import android.graphics.SurfaceTexture;
 import android.view.TextureView;
 import android.view.View;
@@ -8,8 +9,11 @@ import android.view.ViewGroup;
 import com.juankysoriano.rainbow.core.drawing.RainbowDrawer;
 import com.juankysoriano.rainbow.core.drawing.RainbowTextureView;
 import com.juankysoriano.rainbow.core.event.RainbowInputController;
+import com.juankysoriano.rainbow.core.frame.FrameClock;
+import com.juankysoriano.rainbow.core.frame.FrameStats;
 import com.juankysoriano.rainbow.core.graphics.RainbowGraphics;
 import com.juankysoriano.rainbow.core.graphics.RainbowGraphics2D;
+import com.juankysoriano.rainbow.core.graphics.RainbowPresenter;
 
 public class Rainbow {
     private int frameRate = 60;
@@ -19,6 +23,8 @@ public class Rainbow {
     private int width;
     private int height;
     private float scaleFactor = 0.25f;
+    private int presentationDepth = RainbowPresenter.DOUBLE_BUFFERED;
+    private Bitmap.Config surfaceFormat = RainbowGraphics2D.DEFAULT_SURFACE_FORMAT;
     private boolean stopped = true;
     private boolean started = false;
     private boolean paused = true;
@@ -94,9 +100,11 @@ public class Rainbow {
     }
 
     private void initPeriodicGraphics() {
-        RainbowGraphics graphics = new RainbowGraphics2D();
+        RainbowGraphics2D graphics = new RainbowGraphics2D();
         graphics.setParent(Rainbow.this);
         graphics.setPrimary(true);
+        graphics.setPresentationDepth(presentationDepth);
+        graphics.setSurfaceFormat(surfaceFormat);
         if (width > 0 && height > 0) {
             graphics.setSize(width, height, scaleFactor);
             rainbowDrawer.setGraphics(graphics);
@@ -104,7 +112,7 @@ public class Rainbow {
     }
 
     private void initControllerGraphics() {
-        RainbowGraphics graphics = RainbowGraphics2D.createFor(rainbowDrawer.getGraphics().getBitmap(), scaleFactor);
+        RainbowGraphics graphics = RainbowGraphics2D.createFor((RainbowGraphics2D) rainbowDrawer.getGraphics(), scaleFactor);
         graphics.setParent(Rainbow.this);
         rainbowInputController.setScale(scaleFactor);
         if (width > 0 && height > 0) {
@@ -171,10 +179,23 @@ public class Rainbow {
     void performDraw() {
         if (isSetup) {
             rainbowDrawer.beginDraw();
+            onDrawingFrame(rainbowTaskScheduler.getInterpolationAlpha());
             rainbowDrawer.endDraw();
         }
     }
 
+    /**
+     * Called once per frame, right before the frame is presented.
+     * <p/>
+     * When running with a fixed timestep, interpolation tells how far the frame lies between the last step
+     * and the next one (0 to 1), so the sketch can draw a blend of both states instead of stuttering.
+     * Otherwise it is always 1.
+     *
+     * @param interpolation
+     */
+    public void onDrawingFrame(float interpolation) {
+    }
+
     public void pause() {
         if (!isSetup) {
             return;
@@ -328,6 +349,67 @@ public class Rainbow {
         restart();
     }
 
+    /**
+     * Sets the clock which drives steps and frames. By default frames are synchronized with the display vsync
+     *
+     * @param frameClock
+     */
+    protected void frameClock(FrameClock frameClock) {
+        rainbowTaskScheduler.setFrameClock(frameClock);
+        restart();
+    }
+
+    /**
+     * Sets how many frames can be queued for presentation while the next one is being drawn.
+     * 1 presents synchronously, default is 2 (double buffering)
+     *
+     * @param presentationDepth
+     */
+    protected void presentationDepth(int presentationDepth) {
+        this.presentationDepth = presentationDepth;
+        RainbowGraphics graphics = rainbowDrawer.getGraphics();
+        if (graphics instanceof RainbowGraphics2D) {
+            ((RainbowGraphics2D) graphics).setPresentationDepth(presentationDepth);
+        }
+    }
+
+    /**
+     * Sets the pixel format of the sketch surface: ARGB_8888, RGB_565 or ARGB_4444. Default is ARGB_8888.
+     * It is applied when the sketch is set up, so it should be called before that, i.e. from the constructor.
+     *
+     * @param surfaceFormat
+     */
+    protected void surfaceFormat(Bitmap.Config surfaceFormat) {
+        this.surfaceFormat = surfaceFormat;
+    }
+
+    /**
+     * When enabled steps are performed at a stable stepRate regardless of the frame rate, and frames
+     * receive an interpolation value in onDrawingFrame. Default is false
+     *
+     * @param fixedTimestep
+     */
+    protected void fixedTimestep(boolean fixedTimestep) {
+        rainbowTaskScheduler.setFixedTimestep(fixedTimestep);
+        restart();
+    }
+
+    /**
+     * Sets how many extra steps can be performed in a single frame to catch up after missed frames. Default is 4
+     *
+     * @param maxCatchUpSteps
+     */
+    protected void maxCatchUpSteps(int maxCatchUpSteps) {
+        rainbowTaskScheduler.setMaxCatchUpSteps(maxCatchUpSteps);
+    }
+
+    /**
+     * @return statistics about the frames drawn so far, like frame time and jitter
+     */
+    public FrameStats getFrameStats() {
+        return rainbowTaskScheduler.getFrameStats();
+    }
+
     private void restart() {
         if (isResumed()) {
             stop();
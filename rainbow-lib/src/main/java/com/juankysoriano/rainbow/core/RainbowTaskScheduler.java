@@ -1,5 +1,9 @@
 package com.juankysoriano.rainbow.core;
 
+import com.juankysoriano.rainbow.core.frame.ChoreographerFrameClock;
+import com.juankysoriano.rainbow.core.frame.FrameClock;
+import com.juankysoriano.rainbow.core.frame.FramePacer;
+import com.juankysoriano.rainbow.core.frame.FrameStats;
 import com.juankysoriano.rainbow.utils.schedulers.RainbowScheduler;
 import com.juankysoriano.rainbow.utils.schedulers.RainbowSchedulers;
 
@@ -11,6 +15,8 @@ class RainbowTaskScheduler {
     private final DrawingTask.Step stepTask;
     private final DrawingTask.Invalidate invalidateTask;
     private final DrawingTask.Input inputTask;
+    private final FramePacer framePacer;
+    private FrameClock frameClock;
     private RainbowScheduler screenScheduler;
     private RainbowScheduler inputScheduler;
 
@@ -18,17 +24,20 @@ class RainbowTaskScheduler {
         DrawingTask.Step stepTask = new DrawingTask.Step(rainbow);
         DrawingTask.Invalidate invalidateTask = new DrawingTask.Invalidate(rainbow);
         DrawingTask.Input inputTask = new DrawingTask.Input(rainbow, rainbow.getRainbowInputController());
-        return new RainbowTaskScheduler(rainbow, stepTask, invalidateTask, inputTask);
+        FramePacer framePacer = new FramePacer(stepTask, invalidateTask);
+        return new RainbowTaskScheduler(rainbow, stepTask, invalidateTask, inputTask, framePacer);
     }
 
     private RainbowTaskScheduler(Rainbow rainbow,
                                  DrawingTask.Step stepTask,
                                  DrawingTask.Invalidate invalidateTask,
-                                 DrawingTask.Input inputTask) {
+                                 DrawingTask.Input inputTask,
+                                 FramePacer framePacer) {
         this.rainbow = rainbow;
         this.stepTask = stepTask;
         this.invalidateTask = invalidateTask;
         this.inputTask = inputTask;
+        this.framePacer = framePacer;
     }
 
     void scheduleSetup() {
@@ -56,17 +65,41 @@ class RainbowTaskScheduler {
     }
 
     void scheduleDrawing(int stepRate, int frameRate, int inputRate) {
-        screenScheduler().scheduleAtRate(stepTask, SECOND / stepRate, TimeUnit.NANOSECONDS);
-        screenScheduler().scheduleAtRate(invalidateTask, SECOND / frameRate, TimeUnit.NANOSECONDS);
+        framePacer.setRates(stepRate, frameRate);
+        framePacer.start(frameClock());
         inputScheduler().scheduleAtRate(inputTask, SECOND / inputRate, TimeUnit.NANOSECONDS);
     }
 
+    /**
+     * Replaces the vsync clock driving step and draw. Takes effect the next time drawing is scheduled.
+     */
+    void setFrameClock(FrameClock frameClock) {
+        this.frameClock = frameClock;
+    }
+
+    void setMaxCatchUpSteps(int maxCatchUpSteps) {
+        framePacer.setMaxCatchUpSteps(maxCatchUpSteps);
+    }
+
+    void setFixedTimestep(boolean fixedTimestep) {
+        framePacer.setFixedTimestep(fixedTimestep);
+    }
+
+    float getInterpolationAlpha() {
+        return framePacer.getInterpolationAlpha();
+    }
+
+    FrameStats getFrameStats() {
+        return framePacer.getFrameStats();
+    }
+
     boolean isTerminated() {
-        return screenScheduler().isTerminated() || inputScheduler().isTerminated();
+        return !framePacer.isRunning() || inputScheduler().isTerminated();
 
     }
 
     void shutdown() {
+        framePacer.stop();
         stepTask.shutdown();
         invalidateTask.shutdown();
         inputTask.shutdown();
@@ -74,8 +107,15 @@ class RainbowTaskScheduler {
         inputScheduler().shutdown();
     }
 
+    private FrameClock frameClock() {
+        if (frameClock == null) {
+            return new ChoreographerFrameClock(screenScheduler());
+        }
+        return frameClock;
+    }
+
     private RainbowScheduler screenScheduler() {
-        if (screenScheduler == null || screenScheduler.isTerminated()) {
+        if (screenScheduler == null || screenScheduler.isShutdown()) {
             screenScheduler = RainbowSchedulers.single("Drawing", RainbowSchedulers.Priority.MAX);
         }
         return screenScheduler;
@@ -2,35 +2,67 @@ package com.juankysoriano.rainbow.core.cv.blobdetector;
 
 import com.juankysoriano.rainbow.core.matrix.RVector;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * Vertexes are kept packed as x, y pairs in a single float array.
+ */
 public class Blob {
+    private static final int INITIAL_CAPACITY = 16;
     private float xMin, xMax, yMin, yMax;
-    private List<EdgeVertex> edgeVertexes;
+    private float[] edgeVertexes;
+    private int edgeCount;
 
     public Blob() {
-        edgeVertexes = new ArrayList<>();
+        edgeVertexes = new float[INITIAL_CAPACITY * 2];
         xMin = Integer.MAX_VALUE;
         xMax = Integer.MIN_VALUE;
         yMin = Integer.MAX_VALUE;
         yMax = Integer.MIN_VALUE;
     }
 
+    /**
+     * @return a copy of the vertex, changing it does not change the blob
+     */
     public EdgeVertex getEdgeVertex(int edgeIndex) {
-        return edgeVertexes.get(edgeIndex % edgeVertexes.size());
+        int index = edgeIndex % edgeCount;
+        return new EdgeVertex(edgeVertexes[index * 2], edgeVertexes[index * 2 + 1]);
+    }
+
+    public float getEdgeX(int edgeIndex) {
+        return edgeVertexes[(edgeIndex % edgeCount) * 2];
+    }
+
+    public float getEdgeY(int edgeIndex) {
+        return edgeVertexes[(edgeIndex % edgeCount) * 2 + 1];
+    }
+
+    /**
+     * @return x, y pairs of every vertex, packed. The array may be longer than {@link #getEdgeCount()} * 2
+     */
+    public float[] getEdgeVertexes() {
+        return edgeVertexes;
     }
 
     public int getEdgeCount() {
-        return edgeVertexes.size();
+        return edgeCount;
     }
 
     public void addEdgeVertex(EdgeVertex edgeVertex) {
-        edgeVertexes.add(edgeVertex);
-        xMin = Math.min(edgeVertex.x, xMin);
-        xMax = Math.max(edgeVertex.x, xMax);
-        yMin = Math.min(edgeVertex.y, yMin);
-        yMax = Math.max(edgeVertex.y, yMax);
+        addEdgeVertex(edgeVertex.x, edgeVertex.y);
+    }
+
+    public void addEdgeVertex(float x, float y) {
+        if (edgeCount * 2 == edgeVertexes.length) {
+            edgeVertexes = Arrays.copyOf(edgeVertexes, edgeVertexes.length << 1);
+        }
+        edgeVertexes[edgeCount * 2] = x;
+        edgeVertexes[edgeCount * 2 + 1] = y;
+        edgeCount++;
+        xMin = Math.min(x, xMin);
+        xMax = Math.max(x, xMax);
+        yMin = Math.min(y, yMin);
+        yMax = Math.max(y, yMax);
     }
 
     public float getArea() {
@@ -0,0 +1,121 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import com.juankysoriano.rainbow.core.matrix.RVector;
+
+/**
+ * Statistics of a connected component of pixels inside blobs, as found by
+ * {@link BlobDetection#computeComponents(OnComponentsDetectedCallback)}.
+ * <p/>
+ * Unlike {@link Blob}, measures are in pixels and cover the whole component, not only its edges.
+ */
+public class BlobComponent {
+    private final int label;
+    private final int area;
+    private final int perimeter;
+    private final int minX, minY, maxX, maxY;
+    private final float centroidX, centroidY;
+    private final float mu20, mu11, mu02;
+
+    BlobComponent(int label,
+                  int area,
+                  int perimeter,
+                  int minX,
+                  int minY,
+                  int maxX,
+                  int maxY,
+                  float centroidX,
+                  float centroidY,
+                  float mu20,
+                  float mu11,
+                  float mu02) {
+        this.label = label;
+        this.area = area;
+        this.perimeter = perimeter;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.centroidX = centroidX;
+        this.centroidY = centroidY;
+        this.mu20 = mu20;
+        this.mu11 = mu11;
+        this.mu02 = mu02;
+    }
+
+    /**
+     * @return value of the pixels of this component in {@link ComponentLabels#getLabels()}
+     */
+    public int getLabel() {
+        return label;
+    }
+
+    /**
+     * @return number of pixels
+     */
+    public int getArea() {
+        return area;
+    }
+
+    /**
+     * @return number of pixel sides between this component and the outside
+     */
+    public int getPerimeter() {
+        return perimeter;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getWidth() {
+        return maxX - minX + 1;
+    }
+
+    public int getHeight() {
+        return maxY - minY + 1;
+    }
+
+    public RVector getCentroid() {
+        return new RVector(centroidX, centroidY);
+    }
+
+    /**
+     * @return second order central moment along x, sum of (x - centroidX)^2
+     */
+    public float getMu20() {
+        return mu20;
+    }
+
+    /**
+     * @return second order central mixed moment, sum of (x - centroidX) * (y - centroidY)
+     */
+    public float getMu11() {
+        return mu11;
+    }
+
+    /**
+     * @return second order central moment along y, sum of (y - centroidY)^2
+     */
+    public float getMu02() {
+        return mu02;
+    }
+
+    /**
+     * @return angle in radians of the major axis of the component
+     */
+    public float getOrientation() {
+        return (float) (0.5 * Math.atan2(2 * mu11, mu20 - mu02));
+    }
+}
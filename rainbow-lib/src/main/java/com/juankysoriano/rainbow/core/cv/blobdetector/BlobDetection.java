@@ -4,6 +4,12 @@ import com.juankysoriano.rainbow.core.graphics.RainbowImage;
 import com.juankysoriano.rainbow.utils.schedulers.RainbowScheduler;
 import com.juankysoriano.rainbow.utils.schedulers.RainbowSchedulers;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * “It's still magic even if you know how it's done.”
  * <p>
@@ -11,45 +17,268 @@ import com.juankysoriano.rainbow.utils.schedulers.RainbowSchedulers;
  */
 public class BlobDetection {
     private static final int DEFAULT_MAX_NUMBER_OF_BLOBS = 10000;
+    private static final int INITIAL_STACK_SIZE = 1024;
+    private static final int PIXELS_BETWEEN_CANCEL_CHECKS = 4096;
 
     private final int maxNumberOfBlobs;
+    private final RainbowImage rainbowImage;
     private final LuminanceMap luminanceMap;
+    private ComponentLabeling componentLabeling = ComponentLabeling.newInstance();
+    private RainbowScheduler tileScheduler;
 
-    private int numberOfBlobsDetected;
     private final RainbowScheduler scheduler;
-    private boolean skipBlobDetection;
+    private final ContourTracer contourTracer = new ContourTracer();
+    private int[] pendingPixels = new int[INITIAL_STACK_SIZE];
+    private int[] labels;
+    private ThresholdSweep thresholdSweep;
+    private final Deque<BlobDetectionJob> pendingJobs = new ArrayDeque<>();
+    private int maxPendingJobs = Integer.MAX_VALUE;
+    private volatile BlobDetectionJob runningJob;
+    private volatile float threshold;
+    private OnBlobDetectionProgressCallback progressCallback;
 
     public BlobDetection(RainbowImage rainbowImage) {
         this(rainbowImage, DEFAULT_MAX_NUMBER_OF_BLOBS);
     }
 
     private BlobDetection(RainbowImage rainbowImage, int maxNumberOfBlobs) {
+        this.rainbowImage = rainbowImage;
         this.luminanceMap = LuminanceMap.newInstance(rainbowImage);
         this.maxNumberOfBlobs = maxNumberOfBlobs;
-        scheduler = RainbowSchedulers.singleForRecursion("BlobDetection", RainbowSchedulers.Priority.NORMAL);
+        scheduler = RainbowSchedulers.single("BlobDetection", RainbowSchedulers.Priority.NORMAL);
     }
 
+    /**
+     * Applies to the detections requested from now on, the ones already requested keep their threshold
+     */
     public void setThreshold(float value) {
-        luminanceMap.setThreshold(value);
+        if (value < 0 || value > 1) {
+            throw new IllegalArgumentException("Developer error, threshold should be a value between 0 and 1");
+        }
+        threshold = value;
+    }
+
+    /**
+     * Applies to the detections requested from now on
+     */
+    public void setOnBlobDetectionProgressCallback(OnBlobDetectionProgressCallback progressCallback) {
+        this.progressCallback = progressCallback;
     }
 
-    public void computeBlobs(final OnBlobDetectedCallback onBlobDetectedCallback) {
+    /**
+     * Bounds how many detections can wait for the one running. When a new one is requested with the queue
+     * full, the oldest waiting ones are dropped, as their thresholds are already stale. Unbounded by default.
+     *
+     * @param maxPendingJobs at least 1
+     */
+    public void setMaxPendingJobs(int maxPendingJobs) {
+        if (maxPendingJobs < 1) {
+            throw new IllegalArgumentException("Developer error, at least one job should be able to wait");
+        }
+        this.maxPendingJobs = maxPendingJobs;
+    }
+
+    /**
+     * Splits component labeling in strips labelled on the given number of threads. Components are the same
+     * as with a single thread, which is the default. Takes effect once the jobs already requested are done,
+     * as the threads of the running one cannot be stopped under it.
+     *
+     * @param threads number of threads to use
+     */
+    public void setParallelism(final int threads) {
         scheduler.scheduleNow(new Runnable() {
             @Override
             public void run() {
+                if (tileScheduler != null) {
+                    tileScheduler.shutdown();
+                    tileScheduler = null;
+                }
+                if (threads > 1) {
+                    tileScheduler = RainbowSchedulers.multiThreaded("BlobDetection-Tiles", RainbowSchedulers.Priority.NORMAL, threads);
+                    componentLabeling = ComponentLabeling.newInstance(tileScheduler, threads);
+                } else {
+                    componentLabeling = ComponentLabeling.newInstance();
+                }
+            }
+        });
+    }
+
+    public BlobDetectionJob computeBlobs(final OnBlobDetectedCallback onBlobDetectedCallback) {
+        return submit(new DetectionTask() {
+            @Override
+            public void run(BlobDetectionJob job) {
                 luminanceMap.reset();
-                detectBlobs(onBlobDetectedCallback);
+                detectBlobs(job, onBlobDetectedCallback);
                 onBlobDetectedCallback.onBlobDetectionFinish();
             }
         });
     }
 
-    private void detectBlobs(OnBlobDetectedCallback onBlobDetectedCallback) {
-        for (int x = 0; x < luminanceMap.getWidth(); x++) {
+    /**
+     * Labels every connected group of pixels inside blobs and measures them, instead of tracing their edges.
+     * The label buffer is reused by the next detection, see {@link OnComponentsDetectedCallback}.
+     */
+    public BlobDetectionJob computeComponents(final OnComponentsDetectedCallback onComponentsDetectedCallback) {
+        return submit(new DetectionTask() {
+            @Override
+            public void run(BlobDetectionJob job) {
+                luminanceMap.reset();
+                onComponentsDetectedCallback.onComponentsDetected(componentLabeling.label(luminanceMap, labelBuffer(), job));
+            }
+        });
+    }
+
+    /**
+     * Traces the outer contour of every connected group of pixels inside blobs, instead of collecting their
+     * edge pixels in the order they are visited. Blob vertexes are the corners of the contour, in order.
+     *
+     * @param tolerance in pixels, corners closer than this to the simplified contour are dropped. 0 keeps all of them
+     */
+    public BlobDetectionJob computeContours(final float tolerance, final OnBlobDetectedCallback onBlobDetectedCallback) {
+        return submit(new DetectionTask() {
+            @Override
+            public void run(BlobDetectionJob job) {
+                luminanceMap.reset();
+                job.setStage(0, 0.5f);
+                ComponentLabels labels = componentLabeling.label(luminanceMap, labelBuffer(), job);
+                job.setStage(0.5f, 1);
+                int contoursDetected = 0;
+                int componentsTraced = 0;
+                for (BlobComponent component : labels.getComponents()) {
+                    if (contoursDetected >= maxNumberOfBlobs) {
+                        break;
+                    }
+                    job.checkCancelled();
+                    Blob contour = contourTracer.trace(labels, component, tolerance);
+                    if (onBlobDetectedCallback.filterBlob(contour)) {
+                        contoursDetected++;
+                        onBlobDetectedCallback.onBlobDetected(contour);
+                    }
+                    job.reportProgress(++componentsTraced / (float) labels.getComponents().size());
+                }
+                onBlobDetectedCallback.onBlobDetectionFinish();
+            }
+        });
+    }
+
+    /**
+     * Computes the components for every threshold in a single pass, much cheaper than setting each threshold
+     * and computing its components. Thresholds are delivered from the lowest to the highest.
+     *
+     * @param thresholds between 0 and 1, as in {@link #setThreshold(float)}
+     */
+    public BlobDetectionJob computeComponentSweep(final float[] thresholds, final OnThresholdSweepCallback onThresholdSweepCallback) {
+        return submit(new DetectionTask() {
+            @Override
+            public void run(BlobDetectionJob job) {
+                if (thresholdSweep == null) {
+                    thresholdSweep = new ThresholdSweep(luminanceMap);
+                }
+                thresholdSweep.sweep(thresholds, onThresholdSweepCallback, job);
+            }
+        });
+    }
+
+    private int[] labelBuffer() {
+        int size = luminanceMap.getWidth() * luminanceMap.getHeight();
+        if (labels == null || labels.length != size) {
+            labels = new int[size];
+        }
+        return labels;
+    }
+
+    /**
+     * Jobs run one after another on the same thread, reusing the luminance map and the scan buffers.
+     * Once cancelled with {@link #cancel()}, jobs are returned already cancelled and done.
+     */
+    private BlobDetectionJob submit(final DetectionTask task) {
+        final BlobDetectionJob job = new BlobDetectionJob(threshold, progressCallback);
+        synchronized (pendingJobs) {
+            while (pendingJobs.size() >= maxPendingJobs) {
+                BlobDetectionJob staleJob = pendingJobs.removeFirst();
+                staleJob.cancel();
+                staleJob.finish();
+            }
+            pendingJobs.addLast(job);
+        }
+        try {
+            schedule(job, task);
+        } catch (RejectedExecutionException e) {
+            synchronized (pendingJobs) {
+                pendingJobs.remove(job);
+            }
+            job.cancel();
+            job.finish();
+        }
+        return job;
+    }
+
+    private void schedule(final BlobDetectionJob job, final DetectionTask task) {
+        scheduler.scheduleNow(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (pendingJobs) {
+                    pendingJobs.remove(job);
+                }
+                if (job.isCancelled()) {
+                    job.finish();
+                    return;
+                }
+                runningJob = job;
+                try {
+                    luminanceMap.setThreshold(job.getThreshold());
+                    task.run(job);
+                    job.setStage(0, 1);
+                    job.reportProgress(1);
+                } catch (CancellationException e) {
+                    // Cancelled while running, nothing else to do
+                } finally {
+                    runningJob = null;
+                    job.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels the running job and drops the waiting ones. New jobs can still be requested afterwards.
+     */
+    public void cancelJobs() {
+        synchronized (pendingJobs) {
+            for (BlobDetectionJob job : pendingJobs) {
+                job.cancel();
+            }
+        }
+        BlobDetectionJob job = runningJob;
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Luminance of the image is computed once. Call this after changing its pixels so detection sees them.
+     */
+    public void onImageChanged() {
+        scheduler.scheduleNow(new Runnable() {
+            @Override
+            public void run() {
+                rainbowImage.loadPixels();
+                luminanceMap.calculateLuminances(rainbowImage.pixels);
+            }
+        });
+    }
+
+    private void detectBlobs(BlobDetectionJob job, OnBlobDetectedCallback onBlobDetectedCallback) {
+        int width = luminanceMap.getWidth();
+        int numberOfBlobsDetected = 0;
+        for (int x = 0; x < width; x++) {
+            job.checkCancelled();
+            job.reportProgress(x / (float) width);
             for (int y = 0; y < luminanceMap.getHeight(); y++) {
-                if (hasToDetectMoreBlobs()) {
-                    skipBlobDetection = false;
-                    findBlobAt(x, y, onBlobDetectedCallback);
+                if (hasToDetectMoreBlobs(numberOfBlobsDetected)) {
+                    if (findBlobAt(job, x, y, onBlobDetectedCallback)) {
+                        numberOfBlobsDetected++;
+                    }
                 } else {
                     return;
                 }
@@ -57,74 +286,100 @@ public class BlobDetection {
         }
     }
 
-    private boolean hasToDetectMoreBlobs() {
+    private boolean hasToDetectMoreBlobs(int numberOfBlobsDetected) {
         return numberOfBlobsDetected < maxNumberOfBlobs;
     }
 
-    private void findBlobAt(int x, int y, OnBlobDetectedCallback onBlobDetectedCallback) {
+    /**
+     * @return whether a blob was found at (x, y) and accepted by the callback
+     */
+    private boolean findBlobAt(BlobDetectionJob job, int x, int y, OnBlobDetectedCallback onBlobDetectedCallback) {
         if (luminanceMap.isVisited(x, y) || !isBlobEdge(x, y)) {
-            return;
+            return false;
         }
 
         Blob newBlob = new Blob();
-        findVertexes(newBlob, x, y);
+        findVertexes(job, newBlob, x, y);
 
         if (onBlobDetectedCallback.filterBlob(newBlob)) {
-            numberOfBlobsDetected++;
             onBlobDetectedCallback.onBlobDetected(newBlob);
+            return true;
         }
+        return false;
     }
 
-    private void findVertexes(final Blob newBlob, final int x, final int y) {
-        if (skipBlobDetection || luminanceMap.isVisited(x, y)) {
-            return;
-        }
-
-        luminanceMap.visit(x, y);
+    /**
+     * Depth first walk along the edge pixels connected to (x, y), using an explicit stack of pixel indexes
+     * so blobs of any size are fully traced. Neighbours are pushed in reverse order, so vertexes are found
+     * in the same order a recursive walk exploring left, right, up and down would find them.
+     */
+    private void findVertexes(BlobDetectionJob job, Blob newBlob, int x, int y) {
+        int width = luminanceMap.getWidth();
+        int size = 0;
+        int visitedPixels = 0;
+        pendingPixels[size++] = x + width * y;
+        while (size > 0) {
+            if (++visitedPixels % PIXELS_BETWEEN_CANCEL_CHECKS == 0) {
+                job.checkCancelled();
+            }
+            int index = pendingPixels[--size];
+            int pixelX = index % width;
+            int pixelY = index / width;
+            if (luminanceMap.isVisited(pixelX, pixelY)) {
+                continue;
+            }
 
-        if (isBlobEdge(x, y)) {
-            addVertexToBlob(newBlob, x, y);
-            safeExploreNeighbours(newBlob, x, y);
-        }
-    }
+            luminanceMap.visit(pixelX, pixelY);
 
-    private void safeExploreNeighbours(Blob newBlob, int x, int y) {
-        try {
-            exploreNeighbours(newBlob, x, y);
-        } catch (StackOverflowError error) {
-            skipBlobDetection = true;
+            if (isBlobEdge(pixelX, pixelY)) {
+                addVertexToBlob(newBlob, pixelX, pixelY);
+                if (size + 4 > pendingPixels.length) {
+                    pendingPixels = Arrays.copyOf(pendingPixels, pendingPixels.length << 1);
+                }
+                pendingPixels[size++] = index + width;
+                pendingPixels[size++] = index - width;
+                pendingPixels[size++] = index + 1;
+                pendingPixels[size++] = index - 1;
+            }
         }
     }
 
     private void addVertexToBlob(Blob newBlob, int x, int y) {
         float edgeX = x / (float) luminanceMap.getWidth();
         float edgeY = y / (float) luminanceMap.getHeight();
-        newBlob.addEdgeVertex(new EdgeVertex(edgeX, edgeY));
-    }
-
-    private void exploreNeighbours(Blob newBlob, int x, int y) {
-        findVertexes(newBlob, x - 1, y);
-        findVertexes(newBlob, x + 1, y);
-        findVertexes(newBlob, x, y - 1);
-        findVertexes(newBlob, x, y + 1);
+        newBlob.addEdgeVertex(edgeX, edgeY);
     }
 
     private boolean isBlobEdge(int x, int y) {
-        boolean isLeftPixelInsideBlob = luminanceMap.isInsideBlob(x - 1, y);
-        boolean isRightPixelInsideBlob = luminanceMap.isInsideBlob(x + 1, y);
-        boolean isUpPixelInsideBlob = luminanceMap.isInsideBlob(x, y - 1);
-        boolean isDownPixelInsideBlob = luminanceMap.isInsideBlob(x, y + 1);
-        boolean allNeighboursInsideBlob = isLeftPixelInsideBlob && isRightPixelInsideBlob && isUpPixelInsideBlob && isDownPixelInsideBlob;
-        boolean noNeighbourInsideBlob = !isLeftPixelInsideBlob && !isRightPixelInsideBlob && !isUpPixelInsideBlob && !isDownPixelInsideBlob;
-
-        // We have already seen if the neighbours are inside a blob.
-        // If all of them are, or none of them are, then we can guarantee that coord(x, y)
-        // is not a blob edge.
-        return !noNeighbourInsideBlob && !allNeighboursInsideBlob;
+        return luminanceMap.isBlobEdge(x, y);
     }
 
+    /**
+     * Cancels every job and stops the detection threads, no more jobs can be requested afterwards.
+     */
     public void cancel() {
+        cancelJobs();
         scheduler.shutdown();
+        if (tileScheduler != null) {
+            tileScheduler.shutdown();
+        }
+        finishPendingJobs();
     }
 
+    /**
+     * Jobs still waiting were dropped with the detection thread before they could run and finish themselves
+     */
+    private void finishPendingJobs() {
+        synchronized (pendingJobs) {
+            while (!pendingJobs.isEmpty()) {
+                BlobDetectionJob job = pendingJobs.removeFirst();
+                job.cancel();
+                job.finish();
+            }
+        }
+    }
+
+    private interface DetectionTask {
+        void run(BlobDetectionJob job);
+    }
 }
@@ -0,0 +1,93 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Handle of a detection requested to {@link BlobDetection}.
+ * <p/>
+ * Cancelling is cooperative: the scan checks the job as it goes and stops at the next check. The callback of
+ * a cancelled job is not told that detection finished.
+ */
+public class BlobDetectionJob {
+    private static final int PROGRESS_STEPS = 100;
+
+    private final float threshold;
+    private final OnBlobDetectionProgressCallback progressCallback;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+    private volatile float progress;
+    private float stageStart;
+    private float stageEnd = 1;
+    private int reportedStep = -1;
+
+    BlobDetectionJob(float threshold, OnBlobDetectionProgressCallback progressCallback) {
+        this.threshold = threshold;
+        this.progressCallback = progressCallback;
+    }
+
+    /**
+     * Stops the job if it is running, or drops it if it has not started yet
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return whether the job finished, was cancelled or was dropped
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return between 0 and 1
+     */
+    public float getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return threshold the job detects at, the one set when it was requested
+     */
+    public float getThreshold() {
+        return threshold;
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Progress reported from now on is mapped into the given part of the whole job
+     */
+    void setStage(float start, float end) {
+        stageStart = start;
+        stageEnd = end;
+    }
+
+    /**
+     * @param stageProgress between 0 and 1, progress of the current stage
+     */
+    synchronized void reportProgress(float stageProgress) {
+        float jobProgress = stageStart + (stageEnd - stageStart) * stageProgress;
+        int step = (int) (jobProgress * PROGRESS_STEPS);
+        if (step <= reportedStep) {
+            return;
+        }
+        reportedStep = step;
+        progress = jobProgress;
+        if (progressCallback != null) {
+            progressCallback.onBlobDetectionProgress(this, jobProgress);
+        }
+    }
+
+    void finish() {
+        done = true;
+    }
+}
@@ -0,0 +1,395 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import com.juankysoriano.rainbow.utils.schedulers.RainbowScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Two pass connected component labeling of the pixels inside blobs, using 4-connectivity like the blob tracer.
+ * <p/>
+ * The first pass gives every pixel a provisional label from its left and upper neighbours, recording in a
+ * union-find forest which labels touch. The second pass resolves each pixel to its final label and
+ * accumulates the statistics of its component at the same time. Both passes are row major and skip
+ * whole words of pixels outside blobs.
+ * <p/>
+ * With a tile scheduler, the image is split in horizontal strips labelled in parallel. Strip labels are
+ * then offset to be unique, the labels meeting across each seam are merged, and the second pass runs in
+ * parallel again with one set of statistics per strip, summed at the end. Provisional labels still grow in
+ * scan order, so the result is exactly the same as labelling serially.
+ */
+class ComponentLabeling {
+    private static final int BACKGROUND = 0;
+    private static final int MIN_ROWS_PER_STRIP = 32;
+
+    private final RainbowScheduler tileScheduler;
+    private final int maxStrips;
+    private int[] parents = new int[256];
+    private int[] finalLabels = new int[256];
+
+    static ComponentLabeling newInstance() {
+        return new ComponentLabeling(null, 1);
+    }
+
+    /**
+     * @param tileScheduler scheduler with at least {@code threads} threads
+     */
+    static ComponentLabeling newInstance(RainbowScheduler tileScheduler, int threads) {
+        return new ComponentLabeling(tileScheduler, Math.max(1, threads));
+    }
+
+    private ComponentLabeling(RainbowScheduler tileScheduler, int maxStrips) {
+        this.tileScheduler = tileScheduler;
+        this.maxStrips = maxStrips;
+    }
+
+    /**
+     * Every strip checks the job once per row, and reports the rows done in both passes as progress.
+     *
+     * @param labels buffer to label into, as many as pixels in the map. Its previous contents are cleared
+     */
+    ComponentLabels label(LuminanceMap luminanceMap, int[] labels, BlobDetectionJob job) {
+        int width = luminanceMap.getWidth();
+        int height = luminanceMap.getHeight();
+        Arrays.fill(labels, BACKGROUND);
+        List<Strip> strips = createStrips(luminanceMap, labels, new RowProgress(job, 2 * height));
+
+        List<Callable<Void>> firstPasses = new ArrayList<>(strips.size());
+        for (final Strip strip : strips) {
+            firstPasses.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    strip.firstPass();
+                    return null;
+                }
+            });
+        }
+        run(firstPasses);
+
+        int provisionalCount = mergeStrips(strips, luminanceMap, labels);
+        final int componentCount = resolveLabels(provisionalCount);
+
+        List<Callable<ComponentAccumulator>> secondPasses = new ArrayList<>(strips.size());
+        for (final Strip strip : strips) {
+            secondPasses.add(new Callable<ComponentAccumulator>() {
+                @Override
+                public ComponentAccumulator call() {
+                    return strip.secondPass(componentCount);
+                }
+            });
+        }
+        List<ComponentAccumulator> accumulators = run(secondPasses);
+
+        ComponentAccumulator total = accumulators.get(0);
+        for (int i = 1; i < accumulators.size(); i++) {
+            total.addAll(accumulators.get(i));
+        }
+        return new ComponentLabels(labels, width, height, total.toComponents());
+    }
+
+    private List<Strip> createStrips(LuminanceMap luminanceMap, int[] labels, RowProgress progress) {
+        int height = luminanceMap.getHeight();
+        int stripCount = tileScheduler == null ? 1 : Math.max(1, Math.min(maxStrips, height / MIN_ROWS_PER_STRIP));
+        List<Strip> strips = new ArrayList<>(stripCount);
+        for (int i = 0; i < stripCount; i++) {
+            strips.add(new Strip(luminanceMap, labels, progress, height * i / stripCount, height * (i + 1) / stripCount));
+        }
+        return strips;
+    }
+
+    private <T> List<T> run(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() == 1) {
+                results.add(tasks.get(0).call());
+                return results;
+            }
+            for (Future<T> future : tileScheduler.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Component labeling interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            throw new RuntimeException("Component labeling failed", e.getCause());
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Component labeling failed", e);
+        }
+    }
+
+    /**
+     * Moves every strip forest into the global one, offsetting their labels, and unions the labels of
+     * vertically adjacent pixels across seams.
+     *
+     * @return number of provisional labels
+     */
+    private int mergeStrips(List<Strip> strips, LuminanceMap luminanceMap, int[] labels) {
+        int base = 0;
+        for (Strip strip : strips) {
+            strip.base = base;
+            ensureLabelCapacity(base + strip.count + 1);
+            for (int label = 1; label <= strip.count; label++) {
+                parents[base + label] = base + strip.parents[label];
+            }
+            base += strip.count;
+        }
+
+        int width = luminanceMap.getWidth();
+        for (int i = 1; i < strips.size(); i++) {
+            Strip upper = strips.get(i - 1);
+            Strip lower = strips.get(i);
+            int upperRow = (lower.top - 1) * width;
+            int lowerRow = lower.top * width;
+            for (int x = 0; x < width; x++) {
+                int up = labels[upperRow + x];
+                int down = labels[lowerRow + x];
+                if (up != BACKGROUND && down != BACKGROUND) {
+                    union(upper.base + up, lower.base + down);
+                }
+            }
+        }
+        return base;
+    }
+
+    private void ensureLabelCapacity(int capacity) {
+        if (capacity > parents.length) {
+            int newLength = Math.max(capacity, parents.length << 1);
+            parents = Arrays.copyOf(parents, newLength);
+            finalLabels = new int[newLength];
+        }
+    }
+
+    private static int find(int[] parents, int label) {
+        int root = label;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[label] != root) {
+            int next = parents[label];
+            parents[label] = root;
+            label = next;
+        }
+        return root;
+    }
+
+    private static int union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        int root = Math.min(rootA, rootB);
+        parents[rootA] = root;
+        parents[rootB] = root;
+        return root;
+    }
+
+    private void union(int a, int b) {
+        union(parents, a, b);
+    }
+
+    /**
+     * Roots always have the smallest label of their tree, so a single ascending sweep numbers the components
+     * consecutively in the order they are first met scanning the image.
+     */
+    private int resolveLabels(int provisionalCount) {
+        int componentCount = 0;
+        for (int label = 1; label <= provisionalCount; label++) {
+            int root = find(parents, label);
+            finalLabels[label] = root == label ? ++componentCount : finalLabels[root];
+        }
+        return componentCount;
+    }
+
+    private class Strip {
+        private final LuminanceMap luminanceMap;
+        private final int[] labels;
+        private final RowProgress progress;
+        private final int top;
+        private final int bottom;
+        private int[] parents = new int[64];
+        private int count;
+        private int base;
+
+        Strip(LuminanceMap luminanceMap, int[] labels, RowProgress progress, int top, int bottom) {
+            this.luminanceMap = luminanceMap;
+            this.labels = labels;
+            this.progress = progress;
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        void firstPass() {
+            int width = luminanceMap.getWidth();
+            int nextLabel = 1;
+            for (int y = top; y < bottom; y++) {
+                progress.nextRow();
+                int row = y * width;
+                for (int x = luminanceMap.nextInsideBlob(0, y); x < width; x = luminanceMap.nextInsideBlob(x + 1, y)) {
+                    int index = row + x;
+                    int left = x > 0 ? labels[index - 1] : BACKGROUND;
+                    int up = y > top ? labels[index - width] : BACKGROUND;
+                    if (left == BACKGROUND && up == BACKGROUND) {
+                        if (nextLabel >= parents.length) {
+                            parents = Arrays.copyOf(parents, parents.length << 1);
+                        }
+                        parents[nextLabel] = nextLabel;
+                        labels[index] = nextLabel++;
+                    } else if (left == BACKGROUND || up == BACKGROUND) {
+                        labels[index] = Math.max(left, up);
+                    } else {
+                        labels[index] = union(parents, left, up);
+                    }
+                }
+            }
+            count = nextLabel - 1;
+        }
+
+        ComponentAccumulator secondPass(int componentCount) {
+            ComponentAccumulator accumulator = new ComponentAccumulator(componentCount);
+            int width = luminanceMap.getWidth();
+            int height = luminanceMap.getHeight();
+            for (int y = top; y < bottom; y++) {
+                progress.nextRow();
+                int row = y * width;
+                for (int x = luminanceMap.nextInsideBlob(0, y); x < width; x = luminanceMap.nextInsideBlob(x + 1, y)) {
+                    int index = row + x;
+                    int label = finalLabels[base + labels[index]];
+                    labels[index] = label;
+                    int boundaryEdges = 0;
+                    if (x == 0 || !luminanceMap.isInsideBlob(x - 1, y)) {
+                        boundaryEdges++;
+                    }
+                    if (x == width - 1 || !luminanceMap.isInsideBlob(x + 1, y)) {
+                        boundaryEdges++;
+                    }
+                    if (y == 0 || !luminanceMap.isInsideBlob(x, y - 1)) {
+                        boundaryEdges++;
+                    }
+                    if (y == height - 1 || !luminanceMap.isInsideBlob(x, y + 1)) {
+                        boundaryEdges++;
+                    }
+                    accumulator.add(label, x, y, boundaryEdges);
+                }
+            }
+            return accumulator;
+        }
+    }
+
+    /**
+     * Rows labelled by all the strips, which may run on different threads.
+     */
+    private static class RowProgress {
+        private final BlobDetectionJob job;
+        private final float totalRows;
+        private final AtomicInteger rowsDone = new AtomicInteger();
+
+        RowProgress(BlobDetectionJob job, int totalRows) {
+            this.job = job;
+            this.totalRows = totalRows;
+        }
+
+        void nextRow() {
+            job.checkCancelled();
+            job.reportProgress(rowsDone.incrementAndGet() / totalRows);
+        }
+    }
+
+    /**
+     * Running sums per component, kept in primitive arrays indexed by label.
+     */
+    private static class ComponentAccumulator {
+        private final int count;
+        private final int[] areas;
+        private final int[] perimeters;
+        private final int[] minX;
+        private final int[] minY;
+        private final int[] maxX;
+        private final int[] maxY;
+        private final long[] sumX;
+        private final long[] sumY;
+        private final long[] sumXX;
+        private final long[] sumXY;
+        private final long[] sumYY;
+
+        ComponentAccumulator(int count) {
+            this.count = count;
+            areas = new int[count + 1];
+            perimeters = new int[count + 1];
+            minX = new int[count + 1];
+            minY = new int[count + 1];
+            maxX = new int[count + 1];
+            maxY = new int[count + 1];
+            sumX = new long[count + 1];
+            sumY = new long[count + 1];
+            sumXX = new long[count + 1];
+            sumXY = new long[count + 1];
+            sumYY = new long[count + 1];
+            Arrays.fill(minX, Integer.MAX_VALUE);
+            Arrays.fill(minY, Integer.MAX_VALUE);
+            Arrays.fill(maxX, Integer.MIN_VALUE);
+            Arrays.fill(maxY, Integer.MIN_VALUE);
+        }
+
+        void add(int label, int x, int y, int boundaryEdges) {
+            areas[label]++;
+            perimeters[label] += boundaryEdges;
+            minX[label] = Math.min(minX[label], x);
+            minY[label] = Math.min(minY[label], y);
+            maxX[label] = Math.max(maxX[label], x);
+            maxY[label] = Math.max(maxY[label], y);
+            sumX[label] += x;
+            sumY[label] += y;
+            sumXX[label] += (long) x * x;
+            sumXY[label] += (long) x * y;
+            sumYY[label] += (long) y * y;
+        }
+
+        void addAll(ComponentAccumulator other) {
+            for (int label = 1; label <= count; label++) {
+                areas[label] += other.areas[label];
+                perimeters[label] += other.perimeters[label];
+                minX[label] = Math.min(minX[label], other.minX[label]);
+                minY[label] = Math.min(minY[label], other.minY[label]);
+                maxX[label] = Math.max(maxX[label], other.maxX[label]);
+                maxY[label] = Math.max(maxY[label], other.maxY[label]);
+                sumX[label] += other.sumX[label];
+                sumY[label] += other.sumY[label];
+                sumXX[label] += other.sumXX[label];
+                sumXY[label] += other.sumXY[label];
+                sumYY[label] += other.sumYY[label];
+            }
+        }
+
+        List<BlobComponent> toComponents() {
+            List<BlobComponent> components = new ArrayList<>(count);
+            for (int label = 1; label <= count; label++) {
+                double area = areas[label];
+                double centroidX = sumX[label] / area;
+                double centroidY = sumY[label] / area;
+                components.add(new BlobComponent(label,
+                                                 areas[label],
+                                                 perimeters[label],
+                                                 minX[label],
+                                                 minY[label],
+                                                 maxX[label],
+                                                 maxY[label],
+                                                 (float) centroidX,
+                                                 (float) centroidY,
+                                                 (float) (sumXX[label] - centroidX * sumX[label]),
+                                                 (float) (sumXY[label] - centroidX * sumY[label]),
+                                                 (float) (sumYY[label] - centroidY * sumY[label])));
+            }
+            return components;
+        }
+    }
+}
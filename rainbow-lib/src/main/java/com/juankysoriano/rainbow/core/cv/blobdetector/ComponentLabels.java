@@ -0,0 +1,51 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Label image and components found by {@link BlobDetection#computeComponents(OnComponentsDetectedCallback)}.
+ */
+public class ComponentLabels {
+    private final int[] labels;
+    private final int width;
+    private final int height;
+    private final List<BlobComponent> components;
+
+    ComponentLabels(int[] labels, int width, int height, List<BlobComponent> components) {
+        this.labels = labels;
+        this.width = width;
+        this.height = height;
+        this.components = Collections.unmodifiableList(components);
+    }
+
+    /**
+     * @return one label per pixel, row by row. 0 outside blobs, otherwise the label of its component
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    public int getLabel(int x, int y) {
+        return labels[x + width * y];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return components sorted by label, which is the order they are first met scanning rows from the top
+     */
+    public List<BlobComponent> getComponents() {
+        return components;
+    }
+
+    public BlobComponent getComponent(int label) {
+        return components.get(label - 1);
+    }
+}
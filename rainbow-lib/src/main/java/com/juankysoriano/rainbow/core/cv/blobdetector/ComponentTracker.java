@@ -0,0 +1,160 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import java.util.Arrays;
+
+/**
+ * Gives the components of consecutive frames ids that stay the same while a component keeps overlapping
+ * the one it was in the previous frame.
+ * <p/>
+ * Every component takes the id of the previous component it overlaps the most. When several components
+ * take the same one, the one overlapping it the most keeps the id and the others get new ones. Overlaps
+ * are counted in an open addressing table keyed by pair of labels, adding whole runs of pixels at once.
+ */
+class ComponentTracker {
+    private static final long EMPTY = 0L;
+    private static final int INITIAL_PAIRS = 1024;
+    private static final int INITIAL_COMPONENTS = 64;
+
+    private long[] pairKeys = new long[INITIAL_PAIRS];
+    private int[] pairOverlaps = new int[INITIAL_PAIRS];
+    private int pairCount;
+    private int[] ids = new int[INITIAL_COMPONENTS];
+    private int[] previousIds = new int[INITIAL_COMPONENTS];
+    private int previousCount;
+    private int[] bestPrevious = new int[INITIAL_COMPONENTS];
+    private int[] bestOverlaps = new int[INITIAL_COMPONENTS];
+    private int[] winners = new int[INITIAL_COMPONENTS];
+    private int[] winnerOverlaps = new int[INITIAL_COMPONENTS];
+    private int nextId = 1;
+
+    /**
+     * @param previousLabels labels of the previous frame, or null if there is none
+     * @return id of each component by label, index 0 is unused. Valid until the next call
+     */
+    int[] track(int[] labels, int[] previousLabels, int componentCount) {
+        ids = ensureCapacity(ids, componentCount + 1);
+        bestPrevious = ensureCapacity(bestPrevious, componentCount + 1);
+        bestOverlaps = ensureCapacity(bestOverlaps, componentCount + 1);
+        Arrays.fill(bestPrevious, 0, componentCount + 1, 0);
+        Arrays.fill(bestOverlaps, 0, componentCount + 1, 0);
+        if (previousLabels != null) {
+            countOverlaps(labels, previousLabels);
+            findBestPrevious();
+        }
+
+        winners = ensureCapacity(winners, previousCount + 1);
+        winnerOverlaps = ensureCapacity(winnerOverlaps, previousCount + 1);
+        Arrays.fill(winners, 0, previousCount + 1, 0);
+        Arrays.fill(winnerOverlaps, 0, previousCount + 1, 0);
+        for (int label = 1; label <= componentCount; label++) {
+            int previous = bestPrevious[label];
+            if (previous != 0 && bestOverlaps[label] > winnerOverlaps[previous]) {
+                winners[previous] = label;
+                winnerOverlaps[previous] = bestOverlaps[label];
+            }
+        }
+        for (int label = 1; label <= componentCount; label++) {
+            int previous = bestPrevious[label];
+            ids[label] = previous != 0 && winners[previous] == label ? previousIds[previous] : nextId++;
+        }
+
+        int[] currentIds = ids;
+        ids = previousIds;
+        previousIds = currentIds;
+        previousCount = componentCount;
+        return currentIds;
+    }
+
+    /**
+     * Forgets the previous frame, so the next components all get new ids.
+     */
+    void reset() {
+        previousCount = 0;
+    }
+
+    private void countOverlaps(int[] labels, int[] previousLabels) {
+        Arrays.fill(pairKeys, EMPTY);
+        pairCount = 0;
+        int runLabel = 0;
+        int runPrevious = 0;
+        int runLength = 0;
+        for (int index = 0; index < labels.length; index++) {
+            int label = labels[index];
+            int previous = previousLabels[index];
+            if (label == 0 || previous == 0) {
+                continue;
+            }
+            if (label == runLabel && previous == runPrevious) {
+                runLength++;
+            } else {
+                addOverlap(runLabel, runPrevious, runLength);
+                runLabel = label;
+                runPrevious = previous;
+                runLength = 1;
+            }
+        }
+        addOverlap(runLabel, runPrevious, runLength);
+    }
+
+    private void addOverlap(int label, int previous, int overlap) {
+        if (overlap == 0) {
+            return;
+        }
+        if ((pairCount + 1) * 2 > pairKeys.length) {
+            growPairs();
+        }
+        long key = (long) label << 32 | previous;
+        int mask = pairKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (pairKeys[slot] != EMPTY && pairKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (pairKeys[slot] == EMPTY) {
+            pairKeys[slot] = key;
+            pairOverlaps[slot] = 0;
+            pairCount++;
+        }
+        pairOverlaps[slot] += overlap;
+    }
+
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32);
+    }
+
+    private void growPairs() {
+        long[] oldKeys = pairKeys;
+        int[] oldOverlaps = pairOverlaps;
+        pairKeys = new long[oldKeys.length << 1];
+        pairOverlaps = new int[oldKeys.length << 1];
+        pairCount = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                addOverlap((int) (oldKeys[slot] >>> 32), (int) oldKeys[slot], oldOverlaps[slot]);
+            }
+        }
+    }
+
+    /**
+     * Ties go to the lowest previous label, so ids do not depend on the layout of the table.
+     */
+    private void findBestPrevious() {
+        for (int slot = 0; slot < pairKeys.length; slot++) {
+            long key = pairKeys[slot];
+            if (key == EMPTY) {
+                continue;
+            }
+            int label = (int) (key >>> 32);
+            int previous = (int) key;
+            int overlap = pairOverlaps[slot];
+            if (overlap > bestOverlaps[label] || (overlap == bestOverlaps[label] && previous < bestPrevious[label])) {
+                bestOverlaps[label] = overlap;
+                bestPrevious[label] = previous;
+            }
+        }
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return array.length >= capacity ? array : Arrays.copyOf(array, Math.max(capacity, array.length << 1));
+    }
+}
@@ -0,0 +1,176 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import java.util.Arrays;
+
+/**
+ * Follows the outer contour of a component, walking along the pixel sides that separate it from the rest
+ * of the image with the component always on the right.
+ * <p/>
+ * Vertexes are the pixel corners where the walk turns, so a straight side takes two vertexes whatever its
+ * length. Pixels touching only by a corner belong to different components, as in {@link ComponentLabeling},
+ * so the walk never crosses them. Holes are not traced.
+ * <p/>
+ * Contours can then be simplified with Douglas-Peucker, keeping only the corners further than the tolerance
+ * from the simplified outline.
+ */
+class ContourTracer {
+    private static final int RIGHT = 0;
+    private static final int DOWN = 1;
+    private static final int LEFT = 2;
+    private static final int UP = 3;
+    private static final int[] DIRECTION_X = {1, 0, -1, 0};
+    private static final int[] DIRECTION_Y = {0, 1, 0, -1};
+
+    private int[] corners = new int[256];
+    private boolean[] keptCorners = new boolean[128];
+    private int[] pendingSegments = new int[64];
+    private int cornerCount;
+
+    /**
+     * @param tolerance in pixels, 0 keeps every corner
+     * @return blob with the corners of the contour in clockwise order, normalised like the blob tracer does
+     */
+    Blob trace(ComponentLabels labels, BlobComponent component, float tolerance) {
+        int label = component.getLabel();
+        int startY = component.getMinY();
+        int startX = component.getMinX();
+        while (labels.getLabel(startX, startY) != label) {
+            startX++;
+        }
+        followContour(labels, label, startX, startY);
+        if (keptCorners.length < cornerCount) {
+            keptCorners = new boolean[corners.length / 2];
+        }
+        if (tolerance > 0) {
+            simplify(tolerance);
+        } else {
+            Arrays.fill(keptCorners, 0, cornerCount, true);
+        }
+
+        Blob blob = new Blob();
+        float width = labels.getWidth();
+        float height = labels.getHeight();
+        for (int i = 0; i < cornerCount; i++) {
+            if (keptCorners[i]) {
+                blob.addEdgeVertex(corners[i * 2] / width, corners[i * 2 + 1] / height);
+            }
+        }
+        return blob;
+    }
+
+    /**
+     * Starts at the top left corner of the first pixel of the component, whose top and left sides are
+     * always on the contour, and walks until it gets back there.
+     */
+    private void followContour(ComponentLabels labels, int label, int startX, int startY) {
+        cornerCount = 0;
+        int x = startX;
+        int y = startY;
+        int direction = RIGHT;
+        addCorner(x, y);
+        while (true) {
+            x += DIRECTION_X[direction];
+            y += DIRECTION_Y[direction];
+            if (x == startX && y == startY) {
+                return;
+            }
+            int turn = direction;
+            if (!isInside(labels, label, x, y, direction)) {
+                turn = (direction + 1) & 3;
+            } else if (isInside(labels, label, x, y, (direction + 3) & 3)) {
+                turn = (direction + 3) & 3;
+            }
+            if (turn != direction) {
+                addCorner(x, y);
+                direction = turn;
+            }
+        }
+    }
+
+    /**
+     * @return whether the pixel on the right of the side starting at the corner in the direction belongs to the component
+     */
+    private static boolean isInside(ComponentLabels labels, int label, int cornerX, int cornerY, int direction) {
+        int x = direction == DOWN || direction == LEFT ? cornerX - 1 : cornerX;
+        int y = direction == LEFT || direction == UP ? cornerY - 1 : cornerY;
+        return x >= 0 && y >= 0 && x < labels.getWidth() && y < labels.getHeight() && labels.getLabel(x, y) == label;
+    }
+
+    private void addCorner(int x, int y) {
+        if ((cornerCount + 1) * 2 > corners.length) {
+            corners = Arrays.copyOf(corners, corners.length << 1);
+        }
+        corners[cornerCount * 2] = x;
+        corners[cornerCount * 2 + 1] = y;
+        cornerCount++;
+    }
+
+    /**
+     * The contour is closed, so it is split in two chains at the first corner and the corner furthest from
+     * it, then every chain is split at its furthest corner while that one is further than the tolerance.
+     */
+    private void simplify(float tolerance) {
+        Arrays.fill(keptCorners, 0, cornerCount, false);
+        keptCorners[0] = true;
+        if (cornerCount < 3) {
+            Arrays.fill(keptCorners, 0, cornerCount, true);
+            return;
+        }
+
+        int furthest = 0;
+        long furthestDistance = -1;
+        for (int i = 1; i < cornerCount; i++) {
+            long dx = corners[i * 2] - corners[0];
+            long dy = corners[i * 2 + 1] - corners[1];
+            if (dx * dx + dy * dy > furthestDistance) {
+                furthestDistance = dx * dx + dy * dy;
+                furthest = i;
+            }
+        }
+        keptCorners[furthest] = true;
+
+        int size = 0;
+        pendingSegments[size++] = 0;
+        pendingSegments[size++] = furthest;
+        pendingSegments[size++] = furthest;
+        pendingSegments[size++] = cornerCount;
+        while (size > 0) {
+            int to = pendingSegments[--size];
+            int from = pendingSegments[--size];
+            int split = -1;
+            float splitDistance = tolerance;
+            for (int i = from + 1; i < to; i++) {
+                float distance = distanceToSegment(i, from, to % cornerCount);
+                if (distance > splitDistance) {
+                    splitDistance = distance;
+                    split = i;
+                }
+            }
+            if (split != -1) {
+                keptCorners[split] = true;
+                if (size + 4 > pendingSegments.length) {
+                    pendingSegments = Arrays.copyOf(pendingSegments, pendingSegments.length << 1);
+                }
+                pendingSegments[size++] = from;
+                pendingSegments[size++] = split;
+                pendingSegments[size++] = split;
+                pendingSegments[size++] = to;
+            }
+        }
+    }
+
+    private float distanceToSegment(int corner, int from, int to) {
+        float x = corners[corner * 2];
+        float y = corners[corner * 2 + 1];
+        float fromX = corners[from * 2];
+        float fromY = corners[from * 2 + 1];
+        float segmentX = corners[to * 2] - fromX;
+        float segmentY = corners[to * 2 + 1] - fromY;
+        float lengthSquared = segmentX * segmentX + segmentY * segmentY;
+        float t = lengthSquared == 0 ? 0 : ((x - fromX) * segmentX + (y - fromY) * segmentY) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        float dx = x - (fromX + t * segmentX);
+        float dy = y - (fromY + t * segmentY);
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -6,55 +6,158 @@ import com.juankysoriano.rainbow.core.graphics.RainbowImage;
 
 import java.util.Arrays;
 
+/**
+ * Luminance of every pixel, cached once per image, plus the pixels inside blobs, the blob edges and the
+ * visited pixels for the current threshold as bitsets.
+ * <p/>
+ * Bitsets hold one bit per pixel in longs, each row starting on a new word, so flags take an eighth of a
+ * boolean array and thresholds, edges and resets are all computed 64 pixels at a time.
+ */
 class LuminanceMap {
-    private static final float MAX_ISO_VALUE = 3.0f * 255.0f;
+    static final int MAX_LUMINANCE = 3 * 255;
+    private static final float MAX_ISO_VALUE = MAX_LUMINANCE;
+    private static final float NOT_THRESHOLDED = -1;
     private static final int BORDER_OFFSET = 5;
-    private final boolean[] insideBlobPixels;
-    private final boolean[] visitedPixels;
-    private final int[] pixels;
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_SIZE = 1 << WORD_SHIFT;
+    private final long[] insideBlobPixels;
+    private final long[] blobEdgePixels;
+    private final long[] visitedPixels;
+    private final short[] luminances;
     private final int width;
     private final int height;
+    private final int wordsPerRow;
     private float luminanceThreshold;
+    private float thresholdedAt = NOT_THRESHOLDED;
 
     static LuminanceMap newInstance(RainbowImage rainbowImage) {
-        int width = rainbowImage.getWidth();
-        int height = rainbowImage.getHeight();
+        LuminanceMap luminanceMap = newInstance(rainbowImage.getWidth(), rainbowImage.getHeight());
         rainbowImage.loadPixels();
-        int[] pixels = rainbowImage.pixels;
-        boolean[] luminanceValues = new boolean[width * height];
-        boolean[] visitedPixels = new boolean[width * height];
-        return new LuminanceMap(pixels, width, height, luminanceValues, visitedPixels);
+        luminanceMap.calculateLuminances(rainbowImage.pixels);
+        return luminanceMap;
     }
 
-    private LuminanceMap(int[] pixels, int width, int height, boolean[] insideBlobPixels, boolean[] visitedPixels) {
-        this.pixels = pixels;
+    /**
+     * @return a map for frames of the given size, black until its luminances are calculated
+     */
+    static LuminanceMap newInstance(int width, int height) {
+        int wordsPerRow = (width + WORD_SIZE - 1) >>> WORD_SHIFT;
+        int words = wordsPerRow * height;
+        return new LuminanceMap(width, height, wordsPerRow, new short[width * height], new long[words], new long[words], new long[words]);
+    }
+
+    private LuminanceMap(int width, int height, int wordsPerRow, short[] luminances, long[] insideBlobPixels, long[] blobEdgePixels, long[] visitedPixels) {
         this.width = width;
         this.height = height;
+        this.wordsPerRow = wordsPerRow;
+        this.luminances = luminances;
         this.insideBlobPixels = insideBlobPixels;
+        this.blobEdgePixels = blobEdgePixels;
         this.visitedPixels = visitedPixels;
     }
 
+    /**
+     * Luminance is computed once, only the pixels inside blobs are recomputed, and only if the threshold changed.
+     */
     void reset() {
-        Arrays.fill(visitedPixels, false);
-        calculateInsideBlobPixels();
+        Arrays.fill(visitedPixels, 0L);
+        if (thresholdedAt != luminanceThreshold) {
+            calculateInsideBlobPixels();
+            calculateBlobEdgePixels();
+            thresholdedAt = luminanceThreshold;
+        }
     }
 
+    /**
+     * Picks up changes made to the pixels of the image since the map was created.
+     *
+     * @param pixels pixels of the image, as many as width * height
+     */
+    void calculateLuminances(int[] pixels) {
+        for (int index = 0; index < luminances.length; index++) {
+            int color = pixels[index];
+            // http://www.songho.ca/dsp/luminance/luminance.html
+            luminances[index] = (short) (3 * (2 * Color.red(color) + 5 * Color.green(color) + Color.blue(color)) >> 3);
+        }
+        thresholdedAt = NOT_THRESHOLDED;
+    }
+
+    /**
+     * Takes the luminance from the Y plane of a YUV frame, like the NV21 previews of the camera, scaled to
+     * the range of the luminance computed from colors.
+     *
+     * @param rowStride bytes from the start of a row of the plane to the next one
+     */
+    void calculateLuminances(byte[] yPlane, int rowStride) {
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int planeRow = y * rowStride;
+            for (int x = 0; x < width; x++) {
+                luminances[row + x] = (short) (3 * (yPlane[planeRow + x] & 0xFF));
+            }
+        }
+        thresholdedAt = NOT_THRESHOLDED;
+    }
+
+    /**
+     * Builds each word of the bitset at once from the cached luminances, leaving the bits past the end
+     * of every row clear.
+     */
     private void calculateInsideBlobPixels() {
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int index = x + width * y;
-                int color = pixels[index];
-                // http://www.songho.ca/dsp/luminance/luminance.html
-                float luminance = 3 * (2 * Color.red(color) + 5 * Color.green(color) + Color.blue(color)) >> 3;
-
-                insideBlobPixels[index] = luminance <= luminanceThreshold;
+        int threshold = (int) Math.floor(luminanceThreshold);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int rowWord = y * wordsPerRow;
+            for (int wordX = 0; wordX < width; wordX += WORD_SIZE) {
+                int end = Math.min(WORD_SIZE, width - wordX);
+                int index = row + wordX;
+                long word = 0L;
+                for (int bit = 0; bit < end; bit++) {
+                    // 1 when the luminance is not above the threshold, without branching
+                    word |= (long) (((threshold - luminances[index + bit]) >>> 31) ^ 1) << bit;
+                }
+                insideBlobPixels[rowWord + (wordX >>> WORD_SHIFT)] = word;
             }
         }
     }
 
+    /**
+     * A pixel is a blob edge when some, but not all, of its four neighbours are inside a blob. Neighbours
+     * are the inside words shifted by one bit, carrying the bit from the adjacent word, or the words of
+     * the rows above and below. Pixels outside the image count as outside blobs.
+     */
+    private void calculateBlobEdgePixels() {
+        for (int y = 0; y < height; y++) {
+            int rowWord = y * wordsPerRow;
+            for (int wordX = 0; wordX < wordsPerRow; wordX++) {
+                int index = rowWord + wordX;
+                long word = insideBlobPixels[index];
+                long previous = wordX > 0 ? insideBlobPixels[index - 1] : 0L;
+                long next = wordX < wordsPerRow - 1 ? insideBlobPixels[index + 1] : 0L;
+                long left = word << 1 | previous >>> (WORD_SIZE - 1);
+                long right = word >>> 1 | next << (WORD_SIZE - 1);
+                long up = y > 0 ? insideBlobPixels[index - wordsPerRow] : 0L;
+                long down = y < height - 1 ? insideBlobPixels[index + wordsPerRow] : 0L;
+                long anyNeighbourInsideBlob = left | right | up | down;
+                long allNeighboursInsideBlob = left & right & up & down;
+                blobEdgePixels[index] = anyNeighbourInsideBlob & ~allNeighboursInsideBlob;
+            }
+        }
+    }
+
+    /**
+     * @return luminance of the pixel, between 0 and {@link #MAX_LUMINANCE}
+     */
+    int getLuminance(int index) {
+        return luminances[index];
+    }
+
+    private int wordIndex(int x, int y) {
+        return y * wordsPerRow + (x >>> WORD_SHIFT);
+    }
+
     void visit(int x, int y) {
-        int offset = x + width * y;
-        visitedPixels[offset] = true;
+        visitedPixels[wordIndex(x, y)] |= 1L << x;
     }
 
     int getWidth() {
@@ -66,11 +169,36 @@ class LuminanceMap {
     }
 
     boolean isVisited(int x, int y) {
-        return isIndexOutsideGrid(x, y) || visitedPixels[x + width * y];
+        return isIndexOutsideGrid(x, y) || (visitedPixels[wordIndex(x, y)] & 1L << x) != 0;
     }
 
     boolean isInsideBlob(int x, int y) {
-        return insideBlobPixels[x + width * y];
+        return (insideBlobPixels[wordIndex(x, y)] & 1L << x) != 0;
+    }
+
+    boolean isBlobEdge(int x, int y) {
+        return (blobEdgePixels[wordIndex(x, y)] & 1L << x) != 0;
+    }
+
+    /**
+     * Skips whole words of pixels outside blobs at once.
+     *
+     * @return the first x, not lower than the given one, of a pixel inside a blob in the row, or the width if there is none
+     */
+    int nextInsideBlob(int x, int y) {
+        if (x >= width) {
+            return width;
+        }
+        int rowWord = y * wordsPerRow;
+        int index = wordIndex(x, y);
+        long word = insideBlobPixels[index] & -1L << x;
+        while (word == 0) {
+            if (++index == rowWord + wordsPerRow) {
+                return width;
+            }
+            word = insideBlobPixels[index];
+        }
+        return ((index - rowWord) << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
     }
 
     private boolean isIndexOutsideGrid(int x, int y) {
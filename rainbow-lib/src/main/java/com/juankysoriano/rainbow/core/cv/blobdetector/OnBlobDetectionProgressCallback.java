@@ -0,0 +1,10 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+public interface OnBlobDetectionProgressCallback {
+    /**
+     * Called from the detection thread every time the job advances at least one percent
+     *
+     * @param progress between 0 and 1
+     */
+    void onBlobDetectionProgress(BlobDetectionJob job, float progress);
+}
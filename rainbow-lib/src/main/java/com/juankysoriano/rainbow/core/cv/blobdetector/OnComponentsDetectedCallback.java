@@ -0,0 +1,9 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+public interface OnComponentsDetectedCallback {
+    /**
+     * Called from the detection thread. Labels are reused by the next detection, so they are only valid during
+     * the call, while the components can be kept.
+     */
+    void onComponentsDetected(ComponentLabels componentLabels);
+}
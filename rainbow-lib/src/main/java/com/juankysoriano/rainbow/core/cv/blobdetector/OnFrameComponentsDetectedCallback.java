@@ -0,0 +1,12 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+public interface OnFrameComponentsDetectedCallback {
+    /**
+     * Called from the detection thread once per processed frame. Labels and ids are reused for the next
+     * frames, so they are only valid during the call.
+     *
+     * @param frame    number of the frame, counting the dropped ones
+     * @param trackIds id of each component by label, index 0 is unused. Null if tracking is disabled
+     */
+    void onFrameComponentsDetected(long frame, ComponentLabels componentLabels, int[] trackIds);
+}
@@ -0,0 +1,12 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import java.util.List;
+
+public interface OnThresholdSweepCallback {
+    /**
+     * Called once per threshold, from the lowest to the highest
+     */
+    void onThresholdComponents(float threshold, List<BlobComponent> components);
+
+    void onThresholdSweepFinish();
+}
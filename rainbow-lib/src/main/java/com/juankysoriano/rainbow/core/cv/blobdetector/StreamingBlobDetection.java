@@ -0,0 +1,187 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import com.juankysoriano.rainbow.utils.schedulers.RainbowScheduler;
+import com.juankysoriano.rainbow.utils.schedulers.RainbowSchedulers;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects the components of successive frames of the same size, like the previews of the camera.
+ * <p/>
+ * Frames are turned into luminance on the thread offering them, so their buffers can be reused as soon as
+ * the call returns, and then labelled on the detection thread. A frame offered while the previous one is
+ * still being labelled is dropped, so detection never falls behind the source. Every buffer is allocated
+ * once and reused for all the frames. Frames can be offered from several threads, each gets its own index.
+ */
+public class StreamingBlobDetection {
+    private static final long DROPPED = -1;
+    private final int width;
+    private final int height;
+    private final LuminanceMap luminanceMap;
+    private final OnFrameComponentsDetectedCallback callback;
+    private final RainbowScheduler scheduler;
+    private final ComponentLabeling componentLabeling = ComponentLabeling.newInstance();
+    private final ComponentTracker componentTracker = new ComponentTracker();
+    private final AtomicBoolean processing = new AtomicBoolean();
+    private int[] labels;
+    private int[] previousLabels;
+    private boolean hasPreviousLabels;
+    private final AtomicLong offeredFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private volatile float threshold;
+    private volatile boolean tracking;
+    private volatile boolean released;
+    private volatile BlobDetectionJob runningJob;
+
+    public StreamingBlobDetection(int width, int height, OnFrameComponentsDetectedCallback callback) {
+        this.width = width;
+        this.height = height;
+        this.luminanceMap = LuminanceMap.newInstance(width, height);
+        this.callback = callback;
+        this.labels = new int[width * height];
+        scheduler = RainbowSchedulers.single("StreamingBlobDetection", RainbowSchedulers.Priority.NORMAL);
+    }
+
+    /**
+     * Applies from the next frame offered
+     */
+    public void setThreshold(float value) {
+        if (value < 0 || value > 1) {
+            throw new IllegalArgumentException("Developer error, threshold should be a value between 0 and 1");
+        }
+        threshold = value;
+    }
+
+    /**
+     * Gives every component an id that stays the same from frame to frame while it overlaps its previous
+     * self. Disabled by default.
+     */
+    public void setTracking(boolean tracking) {
+        this.tracking = tracking;
+    }
+
+    /**
+     * @param argbPixels frame colors, row by row, at least width * height of them
+     * @return false if the frame was dropped, because the previous one is still being processed or this was released
+     */
+    public boolean offerFrame(int[] argbPixels) {
+        if (argbPixels.length < width * height) {
+            throw new IllegalArgumentException("Developer error, frame should have at least width * height pixels");
+        }
+        long frame = startFrame();
+        if (frame == DROPPED) {
+            return false;
+        }
+        luminanceMap.calculateLuminances(argbPixels);
+        return process(frame);
+    }
+
+    /**
+     * @param yPlane    frame luminance, like the first plane of a NV21 camera preview
+     * @param rowStride bytes from the start of a row to the next one, at least width
+     * @return false if the frame was dropped, because the previous one is still being processed or this was released
+     */
+    public boolean offerFrame(byte[] yPlane, int rowStride) {
+        if (rowStride < width || yPlane.length < rowStride * (height - 1) + width) {
+            throw new IllegalArgumentException("Developer error, frame should have at least height rows of width pixels");
+        }
+        long frame = startFrame();
+        if (frame == DROPPED) {
+            return false;
+        }
+        luminanceMap.calculateLuminances(yPlane, rowStride);
+        return process(frame);
+    }
+
+    /**
+     * @return index of the frame, or {@link #DROPPED}
+     */
+    private long startFrame() {
+        long frame = offeredFrames.incrementAndGet() - 1;
+        if (released || !processing.compareAndSet(false, true)) {
+            droppedFrames.incrementAndGet();
+            return DROPPED;
+        }
+        return frame;
+    }
+
+    /**
+     * @return false if released since the frame started, then the frame counts as dropped
+     */
+    private boolean process(final long frame) {
+        try {
+            schedule(frame);
+            return true;
+        } catch (RejectedExecutionException e) {
+            droppedFrames.incrementAndGet();
+            processing.set(false);
+            return false;
+        }
+    }
+
+    private void schedule(final long frame) {
+        scheduler.scheduleNow(new Runnable() {
+            @Override
+            public void run() {
+                BlobDetectionJob job = new BlobDetectionJob(threshold, null);
+                runningJob = job;
+                try {
+                    detectComponents(frame, job);
+                } catch (CancellationException e) {
+                    // Released while processing, nothing else to do
+                } finally {
+                    runningJob = null;
+                    job.finish();
+                    processing.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Labels of the previous frame are kept for tracking, by labelling every frame into the buffer of the
+     * one before it.
+     */
+    private void detectComponents(long frame, BlobDetectionJob job) {
+        luminanceMap.setThreshold(job.getThreshold());
+        luminanceMap.reset();
+        ComponentLabels componentLabels = componentLabeling.label(luminanceMap, labels, job);
+        int[] trackIds = null;
+        if (tracking) {
+            trackIds = componentTracker.track(labels, hasPreviousLabels ? previousLabels : null, componentLabels.getComponents().size());
+            if (previousLabels == null) {
+                previousLabels = new int[width * height];
+            }
+            int[] currentLabels = labels;
+            labels = previousLabels;
+            previousLabels = currentLabels;
+            hasPreviousLabels = true;
+        } else {
+            componentTracker.reset();
+            hasPreviousLabels = false;
+        }
+        callback.onFrameComponentsDetected(frame, componentLabels, trackIds);
+    }
+
+    /**
+     * @return frames dropped because they were offered while the previous one was being processed
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Stops processing the current frame and the detection thread, frames offered afterwards are dropped.
+     */
+    public void release() {
+        released = true;
+        BlobDetectionJob job = runningJob;
+        if (job != null) {
+            job.cancel();
+        }
+        scheduler.shutdown();
+    }
+}
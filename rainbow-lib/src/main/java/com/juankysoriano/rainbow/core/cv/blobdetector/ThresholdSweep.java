@@ -0,0 +1,293 @@
+package com.juankysoriano.rainbow.core.cv.blobdetector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Components of the pixels inside blobs for several thresholds, all computed in a single pass.
+ * <p/>
+ * Raising the threshold only adds pixels, so components only grow and merge. Pixels are bucketed by
+ * luminance once, then added darkest first to a union-find forest that keeps the statistics of every
+ * component in its root. Whenever the next threshold is reached, the current components are reported.
+ * Each pixel is added and united once for the whole sweep, instead of once per threshold.
+ * <p/>
+ * Only pixels starting a new component get a slot in the forest, the rest join a neighbour's one.
+ */
+class ThresholdSweep {
+    private static final int OUTSIDE = -1;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int PIXELS_BETWEEN_CANCEL_CHECKS = 65536;
+
+    private final LuminanceMap luminanceMap;
+    private final int width;
+    private final int height;
+    private final int[] pixelSlots;
+    private final int[] pixelsByLuminance;
+    private final int[] neighbourRoots = new int[4];
+    private int[] parents;
+    private int[] areas;
+    private int[] perimeters;
+    private int[] firstPixels;
+    private int[] minX;
+    private int[] minY;
+    private int[] maxX;
+    private int[] maxY;
+    private long[] sumX;
+    private long[] sumY;
+    private long[] sumXX;
+    private long[] sumXY;
+    private long[] sumYY;
+    private int[] roots;
+    private int[] rootPositions;
+    private int slotCount;
+    private int rootCount;
+
+    ThresholdSweep(LuminanceMap luminanceMap) {
+        this.luminanceMap = luminanceMap;
+        this.width = luminanceMap.getWidth();
+        this.height = luminanceMap.getHeight();
+        this.pixelSlots = new int[width * height];
+        this.pixelsByLuminance = new int[width * height];
+        allocateSlots(INITIAL_SLOTS);
+    }
+
+    private void allocateSlots(int capacity) {
+        parents = grow(parents, capacity);
+        areas = grow(areas, capacity);
+        perimeters = grow(perimeters, capacity);
+        firstPixels = grow(firstPixels, capacity);
+        minX = grow(minX, capacity);
+        minY = grow(minY, capacity);
+        maxX = grow(maxX, capacity);
+        maxY = grow(maxY, capacity);
+        sumX = grow(sumX, capacity);
+        sumY = grow(sumY, capacity);
+        sumXX = grow(sumXX, capacity);
+        sumXY = grow(sumXY, capacity);
+        sumYY = grow(sumYY, capacity);
+        roots = grow(roots, capacity);
+        rootPositions = grow(rootPositions, capacity);
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static long[] grow(long[] array, int capacity) {
+        return array == null ? new long[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    /**
+     * Buffers are kept between sweeps, so sweeping again does not allocate other than the reported components.
+     *
+     * @param thresholds between 0 and 1, as in {@link BlobDetection#setThreshold(float)}
+     */
+    void sweep(float[] thresholds, OnThresholdSweepCallback callback, BlobDetectionJob job) {
+        float[] sortedThresholds = thresholds.clone();
+        Arrays.sort(sortedThresholds);
+        Arrays.fill(pixelSlots, OUTSIDE);
+        slotCount = 0;
+        rootCount = 0;
+
+        int[] bucketStarts = bucketStarts();
+        sortByLuminance(bucketStarts);
+        int added = 0;
+        for (float threshold : sortedThresholds) {
+            if (threshold < 0 || threshold > 1) {
+                throw new IllegalArgumentException("Developer error, threshold should be a value between 0 and 1");
+            }
+            int luminanceThreshold = (int) Math.floor(threshold * LuminanceMap.MAX_LUMINANCE);
+            int end = bucketStarts[luminanceThreshold + 1];
+            for (; added < end; added++) {
+                if (added % PIXELS_BETWEEN_CANCEL_CHECKS == 0) {
+                    job.checkCancelled();
+                    job.reportProgress(added / (float) pixelSlots.length);
+                }
+                addPixel(pixelsByLuminance[added]);
+            }
+            job.checkCancelled();
+            callback.onThresholdComponents(threshold, currentComponents());
+        }
+        callback.onThresholdSweepFinish();
+    }
+
+    /**
+     * @return where each luminance starts in the pixels sorted by luminance, plus the total at the end
+     */
+    private int[] bucketStarts() {
+        int[] starts = new int[LuminanceMap.MAX_LUMINANCE + 2];
+        for (int index = 0; index < pixelSlots.length; index++) {
+            starts[luminanceMap.getLuminance(index) + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        return starts;
+    }
+
+    /**
+     * Counting sort, luminance only takes {@link LuminanceMap#MAX_LUMINANCE} + 1 values.
+     */
+    private void sortByLuminance(int[] bucketStarts) {
+        int[] next = Arrays.copyOf(bucketStarts, bucketStarts.length);
+        for (int index = 0; index < pixelsByLuminance.length; index++) {
+            pixelsByLuminance[next[luminanceMap.getLuminance(index)]++] = index;
+        }
+    }
+
+    /**
+     * Every side shared with a pixel already inside removes a side from both, hence 4 - 2 per neighbour.
+     */
+    private void addPixel(int index) {
+        int x = index % width;
+        int y = index / width;
+        int insideNeighbours = 0;
+        if (x > 0 && pixelSlots[index - 1] != OUTSIDE) {
+            neighbourRoots[insideNeighbours++] = find(pixelSlots[index - 1]);
+        }
+        if (x < width - 1 && pixelSlots[index + 1] != OUTSIDE) {
+            neighbourRoots[insideNeighbours++] = find(pixelSlots[index + 1]);
+        }
+        if (y > 0 && pixelSlots[index - width] != OUTSIDE) {
+            neighbourRoots[insideNeighbours++] = find(pixelSlots[index - width]);
+        }
+        if (y < height - 1 && pixelSlots[index + width] != OUTSIDE) {
+            neighbourRoots[insideNeighbours++] = find(pixelSlots[index + width]);
+        }
+
+        int root;
+        if (insideNeighbours == 0) {
+            root = newSlot(index, x, y);
+        } else {
+            root = neighbourRoots[0];
+            addToSlot(root, index, x, y);
+            for (int i = 1; i < insideNeighbours; i++) {
+                root = union(root, neighbourRoots[i]);
+            }
+        }
+        pixelSlots[index] = root;
+        perimeters[root] += 4 - 2 * insideNeighbours;
+    }
+
+    private int newSlot(int index, int x, int y) {
+        if (slotCount == parents.length) {
+            allocateSlots(slotCount << 1);
+        }
+        int slot = slotCount++;
+        parents[slot] = slot;
+        areas[slot] = 1;
+        perimeters[slot] = 0;
+        firstPixels[slot] = index;
+        minX[slot] = x;
+        maxX[slot] = x;
+        minY[slot] = y;
+        maxY[slot] = y;
+        sumX[slot] = x;
+        sumY[slot] = y;
+        sumXX[slot] = (long) x * x;
+        sumXY[slot] = (long) x * y;
+        sumYY[slot] = (long) y * y;
+        rootPositions[slot] = rootCount;
+        roots[rootCount++] = slot;
+        return slot;
+    }
+
+    private void addToSlot(int slot, int index, int x, int y) {
+        areas[slot]++;
+        firstPixels[slot] = Math.min(firstPixels[slot], index);
+        minX[slot] = Math.min(minX[slot], x);
+        minY[slot] = Math.min(minY[slot], y);
+        maxX[slot] = Math.max(maxX[slot], x);
+        maxY[slot] = Math.max(maxY[slot], y);
+        sumX[slot] += x;
+        sumY[slot] += y;
+        sumXX[slot] += (long) x * x;
+        sumXY[slot] += (long) x * y;
+        sumYY[slot] += (long) y * y;
+    }
+
+    private int find(int slot) {
+        int root = slot;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[slot] != root) {
+            int next = parents[slot];
+            parents[slot] = root;
+            slot = next;
+        }
+        return root;
+    }
+
+    /**
+     * Union by size, the statistics of the smaller component are folded into the larger one.
+     */
+    private int union(int root, int other) {
+        other = find(other);
+        if (other == root) {
+            return root;
+        }
+        int into = areas[root] >= areas[other] ? root : other;
+        int from = into == root ? other : root;
+        parents[from] = into;
+        areas[into] += areas[from];
+        perimeters[into] += perimeters[from];
+        firstPixels[into] = Math.min(firstPixels[into], firstPixels[from]);
+        minX[into] = Math.min(minX[into], minX[from]);
+        minY[into] = Math.min(minY[into], minY[from]);
+        maxX[into] = Math.max(maxX[into], maxX[from]);
+        maxY[into] = Math.max(maxY[into], maxY[from]);
+        sumX[into] += sumX[from];
+        sumY[into] += sumY[from];
+        sumXX[into] += sumXX[from];
+        sumXY[into] += sumXY[from];
+        sumYY[into] += sumYY[from];
+
+        int position = rootPositions[from];
+        int last = roots[--rootCount];
+        roots[position] = last;
+        rootPositions[last] = position;
+        return into;
+    }
+
+    /**
+     * Components are labelled in the order they are first met scanning rows from the top, like
+     * {@link ComponentLabeling} does.
+     */
+    private List<BlobComponent> currentComponents() {
+        Integer[] sortedRoots = new Integer[rootCount];
+        for (int i = 0; i < rootCount; i++) {
+            sortedRoots[i] = roots[i];
+        }
+        Arrays.sort(sortedRoots, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return firstPixels[a] < firstPixels[b] ? -1 : (firstPixels[a] == firstPixels[b] ? 0 : 1);
+            }
+        });
+
+        List<BlobComponent> components = new ArrayList<>(rootCount);
+        for (int i = 0; i < rootCount; i++) {
+            int root = sortedRoots[i];
+            double area = areas[root];
+            double centroidX = sumX[root] / area;
+            double centroidY = sumY[root] / area;
+            components.add(new BlobComponent(i + 1,
+                                             areas[root],
+                                             perimeters[root],
+                                             minX[root],
+                                             minY[root],
+                                             maxX[root],
+                                             maxY[root],
+                                             (float) centroidX,
+                                             (float) centroidY,
+                                             (float) (sumXX[root] - centroidX * sumX[root]),
+                                             (float) (sumXY[root] - centroidX * sumY[root]),
+                                             (float) (sumYY[root] - centroidY * sumY[root])));
+        }
+        return Collections.unmodifiableList(components);
+    }
+}
@@ -3,12 +3,18 @@ package com.juankysoriano.rainbow.core.cv.edgedetector;
 import com.juankysoriano.rainbow.core.graphics.RainbowImage;
 import com.juankysoriano.rainbow.core.matrix.RVector;
 import com.juankysoriano.rainbow.utils.RainbowMath;
+import com.juankysoriano.rainbow.utils.schedulers.RainbowScheduler;
+import com.juankysoriano.rainbow.utils.schedulers.RainbowSchedulers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /*
- An algorithm that uses a custom implementation of a Sobel/Scharr operator to get 
+ An algorithm that uses a custom implementation of a Sobel/Scharr operator to get
  the significant points of a picture.
  */
 
@@ -18,9 +24,25 @@ public class EdgeDetector {
             // kernel
             {{6, 10, 0}, {10, 0, -10}, {0, -10, -6}}}; // Scharr kernel
     // previous array
+    private static final int[][] SMOOTHING = new int[][]{{1, 2, 1}, // Sobel
+            {3, 10, 3}}; // Scharr, weights across the derivative of the gradient operators
+    private static final int MIN_ROWS_PER_BAND = 16;
+    private static final byte NOT_EDGE = 0;
+    private static final byte WEAK_EDGE = 1;
+    private static final byte STRONG_EDGE = 2;
     private int op = SCHARR;
     private int treshold = 350;
     private int step = 3;
+    private RainbowScheduler bandScheduler;
+    private int maxBands = 1;
+    private int[] intensities = new int[0];
+    private final List<EdgePoints> bandPoints = new ArrayList<>();
+    private final EdgeGradient gradient = new EdgeGradient();
+    private boolean hasGradient;
+    private boolean nonMaxSuppression;
+    private int hysteresisTreshold;
+    private byte[] edges = new byte[0];
+    private int[] pendingPixels = new int[1024];
 
     public EdgeDetector() {
     }
@@ -37,27 +59,328 @@ public class EdgeDetector {
         this.step = RainbowMath.constrain(step, 2, 40);
     }
 
+    /**
+     * Makes {@link #extractEdges(EdgePoints)} keep only the pixels stronger than their neighbours across the
+     * edge, so edges are one pixel thick.
+     */
+    public void setNonMaxSuppression(boolean nonMaxSuppression) {
+        this.nonMaxSuppression = nonMaxSuppression;
+    }
+
+    /**
+     * Makes {@link #extractEdges(EdgePoints)} also keep the pixels over this lower threshold that are connected
+     * to pixels over the threshold, as Canny does. 0 disables it, which is the default.
+     */
+    public void setHysteresisThreshold(int lowThreshold) {
+        this.hysteresisTreshold = RainbowMath.constrain(lowThreshold, 0, 2000);
+    }
+
+    /**
+     * Splits extraction in bands of rows processed on the given number of threads. Points are the same, and
+     * in the same order, as with a single thread, which is the default.
+     *
+     * @param threads number of threads to use
+     */
+    public void setParallelism(int threads) {
+        release();
+        if (threads > 1) {
+            bandScheduler = RainbowSchedulers.multiThreaded("EdgeDetector-Bands", RainbowSchedulers.Priority.NORMAL, threads);
+            maxBands = threads;
+        }
+    }
+
+    /**
+     * Stops the threads used for parallel extraction, if any. Extraction goes on with a single thread.
+     */
+    public void release() {
+        if (bandScheduler != null) {
+            bandScheduler.shutdown();
+            bandScheduler = null;
+        }
+        maxBands = 1;
+    }
+
     // This method add significant points of the given picture to a given list
     public List<RVector> extractPoints(RainbowImage img) {
-        List<RVector> vertices = new ArrayList<>();
-        int col = 0, colSum = 0, W = img.width - 1, H = img.height - 1;
-
-        // For any pixel in the image excepting borders
-        for (int Y = 1; Y < H; Y += step) {
-            for (int X = 1; X < W; X += step, colSum = 0) {
-                // Convolute surrounding pixels with desired operator
-                for (int y = -1; y <= 1; y++) {
-                    for (int x = -1; x <= 1; x++, col = img.get((X + x), (Y + y))) {
-                        colSum += OPERATOR[op][x + 1][y + 1] * ((col >> 16 & 0xFF) + (col >> 8 & 0xFF) + (col & 0xFF));
+        EdgePoints points = new EdgePoints();
+        extractPoints(img, points);
+        List<RVector> vertices = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            vertices.add(new RVector(points.getX(i), points.getY(i)));
+        }
+        return vertices;
+    }
+
+    /**
+     * Same points as {@link #extractPoints(RainbowImage)}, row by row, written into the given buffer.
+     * <p/>
+     * Pixels are turned into an intensity plane first, so every neighbour is read once from a flat array,
+     * and the 3x3 operator is then applied only at the sampled pixels.
+     *
+     * @param points cleared before adding the points, reuse it between calls to avoid allocating
+     */
+    public void extractPoints(RainbowImage img, EdgePoints points) {
+        points.clear();
+        img.loadPixels();
+        final int[] pixels = img.pixels;
+        final int width = img.width;
+        final int height = img.height;
+        if (width < 3 || height < 3) {
+            return;
+        }
+        if (intensities.length < width * height) {
+            intensities = new int[width * height];
+        }
+        final int[] kernel = flatKernel(OPERATOR[op]);
+        final int threshold = treshold;
+        final int sampleStep = step;
+        final int sampleRows = (height - 2 + sampleStep - 1) / sampleStep;
+        int bands = bandScheduler == null ? 1 : Math.max(1, Math.min(maxBands, height / MIN_ROWS_PER_BAND));
+        while (bandPoints.size() < bands) {
+            bandPoints.add(new EdgePoints());
+        }
+
+        List<Callable<Void>> intensityBands = new ArrayList<>(bands);
+        List<Callable<Void>> convolutionBands = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            final int top = height * i / bands;
+            final int bottom = height * (i + 1) / bands;
+            final int firstSample = sampleRows * i / bands;
+            final int lastSample = sampleRows * (i + 1) / bands;
+            final EdgePoints band = bandPoints.get(i);
+            intensityBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    calculateIntensities(pixels, width, top, bottom);
+                    return null;
+                }
+            });
+            convolutionBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    band.clear();
+                    convolve(kernel, width, firstSample, lastSample, sampleStep, threshold, band);
+                    return null;
+                }
+            });
+        }
+        run(intensityBands);
+        run(convolutionBands);
+        for (int i = 0; i < bands; i++) {
+            points.addAll(bandPoints.get(i));
+        }
+    }
+
+    /**
+     * Computes the gradient of the image with the current operator, to extract its edges as many times as
+     * needed without convolving it again. Changing the operator takes effect on the next image set.
+     */
+    public void setImage(RainbowImage img) {
+        img.loadPixels();
+        final int[] pixels = img.pixels;
+        final int width = img.width;
+        final int height = img.height;
+        if (intensities.length < width * height) {
+            intensities = new int[width * height];
+        }
+        gradient.resize(width, height);
+        final int[] smoothing = SMOOTHING[op];
+        int bands = bandScheduler == null ? 1 : Math.max(1, Math.min(maxBands, height / MIN_ROWS_PER_BAND));
+        List<Callable<Void>> intensityBands = new ArrayList<>(bands);
+        List<Callable<Void>> gradientBands = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            final int top = height * i / bands;
+            final int bottom = height * (i + 1) / bands;
+            intensityBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    calculateIntensities(pixels, width, top, bottom);
+                    return null;
+                }
+            });
+            gradientBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    gradient.compute(intensities, smoothing, top, bottom);
+                    return null;
+                }
+            });
+        }
+        run(intensityBands);
+        run(gradientBands);
+        hasGradient = true;
+    }
+
+    /**
+     * @return gradient of the last image set, valid until the next one
+     */
+    public EdgeGradient getGradient() {
+        if (!hasGradient) {
+            throw new IllegalStateException("Developer error, set an image before getting its gradient");
+        }
+        return gradient;
+    }
+
+    /**
+     * Adds the pixels of the last image set whose gradient magnitude is over the threshold, optionally
+     * thinned by non maximum suppression and extended by hysteresis. Only thresholds are applied, so it is
+     * cheap to call again after changing them.
+     * <p/>
+     * Points are sampled every step pixels in both axes like {@link #extractPoints(RainbowImage)} does. Edges
+     * are one pixel thick with non maximum suppression, so then one out of every step edge pixels is kept
+     * in scan order instead.
+     *
+     * @param points cleared before adding the points, reuse it between calls to avoid allocating
+     */
+    public void extractEdges(EdgePoints points) {
+        EdgeGradient gradient = getGradient();
+        points.clear();
+        int width = gradient.getWidth();
+        int height = gradient.getHeight();
+        if (edges.length < width * height) {
+            edges = new byte[width * height];
+        }
+        int highTreshold = treshold;
+        int lowTreshold = hysteresisTreshold > 0 ? Math.min(hysteresisTreshold, highTreshold) : highTreshold;
+        classifyEdges(gradient, width, height, lowTreshold, highTreshold);
+        if (lowTreshold < highTreshold) {
+            connectWeakEdges(width, height);
+        }
+
+        if (nonMaxSuppression) {
+            int edgePixels = 0;
+            for (int index = 0; index < width * height; index++) {
+                if (edges[index] == STRONG_EDGE && edgePixels++ % step == 0) {
+                    points.add(index % width, index / width);
+                }
+            }
+        } else {
+            for (int y = 1; y < height - 1; y += step) {
+                for (int x = 1; x < width - 1; x += step) {
+                    if (edges[x + width * y] == STRONG_EDGE) {
+                        points.add(x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pixels on the border have no gradient, so they are never edges and the neighbours of the rest exist.
+     */
+    private void classifyEdges(EdgeGradient gradient, int width, int height, int lowTreshold, int highTreshold) {
+        for (int index = 0; index < width * height; index++) {
+            float magnitude = gradient.getMagnitude(index);
+            if (magnitude <= lowTreshold || (nonMaxSuppression && !gradient.isLocalMaximum(index))) {
+                edges[index] = NOT_EDGE;
+            } else {
+                edges[index] = magnitude > highTreshold ? STRONG_EDGE : WEAK_EDGE;
+            }
+        }
+    }
+
+    /**
+     * Promotes to strong every weak edge 8-connected to a strong one, walking from all the strong edges
+     * with an explicit stack.
+     */
+    private void connectWeakEdges(int width, int height) {
+        int size = 0;
+        for (int index = 0; index < width * height; index++) {
+            if (edges[index] == STRONG_EDGE) {
+                size = push(size, index);
+            }
+        }
+        while (size > 0) {
+            int index = pendingPixels[--size];
+            int x = index % width;
+            int y = index / width;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int neighbourX = x + dx;
+                    int neighbourY = y + dy;
+                    if (neighbourX < 0 || neighbourY < 0 || neighbourX >= width || neighbourY >= height) {
+                        continue;
+                    }
+                    int neighbour = neighbourX + width * neighbourY;
+                    if (edges[neighbour] == WEAK_EDGE) {
+                        edges[neighbour] = STRONG_EDGE;
+                        size = push(size, neighbour);
                     }
                 }
+            }
+        }
+    }
+
+    private int push(int size, int index) {
+        if (size == pendingPixels.length) {
+            pendingPixels = Arrays.copyOf(pendingPixels, pendingPixels.length << 1);
+        }
+        pendingPixels[size] = index;
+        return size + 1;
+    }
+
+    /**
+     * @return the operator as a row major 3x3 array, the operator itself is indexed by column first
+     */
+    private static int[] flatKernel(int[][] operator) {
+        int[] kernel = new int[9];
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 3; x++) {
+                kernel[y * 3 + x] = operator[x][y];
+            }
+        }
+        return kernel;
+    }
+
+    private void calculateIntensities(int[] pixels, int width, int top, int bottom) {
+        int[] intensities = this.intensities;
+        for (int index = top * width; index < bottom * width; index++) {
+            int col = pixels[index];
+            intensities[index] = (col >> 16 & 0xFF) + (col >> 8 & 0xFF) + (col & 0xFF);
+        }
+    }
+
+    private void convolve(int[] kernel, int width, int firstSample, int lastSample, int step, int threshold, EdgePoints points) {
+        int[] intensities = this.intensities;
+        int k0 = kernel[0], k1 = kernel[1], k2 = kernel[2];
+        int k3 = kernel[3], k4 = kernel[4], k5 = kernel[5];
+        int k6 = kernel[6], k7 = kernel[7], k8 = kernel[8];
+        for (int sample = firstSample; sample < lastSample; sample++) {
+            int y = 1 + sample * step;
+            int up = (y - 1) * width;
+            int middle = y * width;
+            int down = (y + 1) * width;
+            for (int x = 1; x < width - 1; x += step) {
+                int colSum = k0 * intensities[up + x - 1] + k1 * intensities[up + x] + k2 * intensities[up + x + 1]
+                        + k3 * intensities[middle + x - 1] + k4 * intensities[middle + x] + k5 * intensities[middle + x + 1]
+                        + k6 * intensities[down + x - 1] + k7 * intensities[down + x] + k8 * intensities[down + x + 1];
                 // And if the resulting sum is over the treshold add pixel
                 // position to the list
-                if (RainbowMath.abs(colSum) > treshold) {
-                    vertices.add(new RVector(X, Y));
+                if (Math.abs(colSum) > threshold) {
+                    points.add(x, y);
                 }
             }
         }
-        return vertices;
+    }
+
+    private <T> List<T> run(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() == 1) {
+                results.add(tasks.get(0).call());
+                return results;
+            }
+            for (Future<T> future : bandScheduler.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Edge detection interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Edge detection failed", e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException("Edge detection failed", e);
+        }
     }
 }
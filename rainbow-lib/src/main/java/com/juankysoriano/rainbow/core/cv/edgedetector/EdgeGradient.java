@@ -0,0 +1,160 @@
+package com.juankysoriano.rainbow.core.cv.edgedetector;
+
+/**
+ * Horizontal and vertical derivatives of an image intensity, with their magnitude and orientation, as
+ * computed by {@link EdgeDetector} when an image is set.
+ * <p/>
+ * Planes are row major and keep their arrays between images, so they are only valid until the next image
+ * is set. Pixels on the border have no gradient.
+ */
+public class EdgeGradient {
+    static final byte HORIZONTAL = 0;
+    static final byte DIAGONAL = 1;
+    static final byte VERTICAL = 2;
+    static final byte ANTI_DIAGONAL = 3;
+    // tan(22.5º) as 53 / 128, splitting the orientations in four sectors without trigonometry
+    private static final int TAN_SECTOR_NUMERATOR = 53;
+    private static final int TAN_SECTOR_SHIFT = 7;
+
+    private int width;
+    private int height;
+    private int[] gx = new int[0];
+    private int[] gy = new int[0];
+    private float[] magnitudes = new float[0];
+    private byte[] directions = new byte[0];
+
+    void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        if (gx.length < size) {
+            gx = new int[size];
+            gy = new int[size];
+            magnitudes = new float[size];
+            directions = new byte[size];
+        }
+    }
+
+    /**
+     * Applies the derivative along one axis and the smoothing along the other, which is what the Sobel
+     * and Scharr operators are, to the rows of the band.
+     *
+     * @param smoothing weights of the previous, same and next pixel across the derivative
+     */
+    void compute(int[] intensities, int[] smoothing, int top, int bottom) {
+        int s0 = smoothing[0];
+        int s1 = smoothing[1];
+        int s2 = smoothing[2];
+        for (int y = top; y < bottom; y++) {
+            int row = y * width;
+            if (y == 0 || y == height - 1) {
+                clear(row, row + width);
+                continue;
+            }
+            clear(row, row + 1);
+            clear(row + width - 1, row + width);
+            int up = row - width;
+            int down = row + width;
+            for (int x = 1; x < width - 1; x++) {
+                int index = row + x;
+                int dx = s0 * (intensities[up + x + 1] - intensities[up + x - 1])
+                        + s1 * (intensities[index + 1] - intensities[index - 1])
+                        + s2 * (intensities[down + x + 1] - intensities[down + x - 1]);
+                int dy = s0 * (intensities[down + x - 1] - intensities[up + x - 1])
+                        + s1 * (intensities[down + x] - intensities[up + x])
+                        + s2 * (intensities[down + x + 1] - intensities[up + x + 1]);
+                gx[index] = dx;
+                gy[index] = dy;
+                magnitudes[index] = (float) Math.sqrt((float) dx * dx + (float) dy * dy);
+                directions[index] = quantize(dx, dy);
+            }
+        }
+    }
+
+    private void clear(int from, int to) {
+        for (int index = from; index < to; index++) {
+            gx[index] = 0;
+            gy[index] = 0;
+            magnitudes[index] = 0;
+            directions[index] = HORIZONTAL;
+        }
+    }
+
+    /**
+     * @return the one of the four directions closest to the gradient, y growing downwards
+     */
+    private static byte quantize(int dx, int dy) {
+        int absX = Math.abs(dx);
+        int absY = Math.abs(dy);
+        if (absY << TAN_SECTOR_SHIFT <= absX * TAN_SECTOR_NUMERATOR) {
+            return HORIZONTAL;
+        }
+        if (absX << TAN_SECTOR_SHIFT <= absY * TAN_SECTOR_NUMERATOR) {
+            return VERTICAL;
+        }
+        return (dx > 0) == (dy > 0) ? DIAGONAL : ANTI_DIAGONAL;
+    }
+
+    /**
+     * @return whether the pixel is not weaker than its two neighbours across the edge, strictly stronger
+     * than the one before so plateaus stay one pixel thick
+     */
+    boolean isLocalMaximum(int index) {
+        int offset;
+        switch (directions[index]) {
+            case HORIZONTAL:
+                offset = 1;
+                break;
+            case VERTICAL:
+                offset = width;
+                break;
+            case DIAGONAL:
+                offset = width + 1;
+                break;
+            default:
+                offset = width - 1;
+                break;
+        }
+        float magnitude = magnitudes[index];
+        return magnitude > magnitudes[index - offset] && magnitude >= magnitudes[index + offset];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getGx(int x, int y) {
+        return gx[x + width * y];
+    }
+
+    public int getGy(int x, int y) {
+        return gy[x + width * y];
+    }
+
+    public float getMagnitude(int x, int y) {
+        return magnitudes[x + width * y];
+    }
+
+    /**
+     * @return angle of the gradient in radians, between -PI and PI, y growing downwards
+     */
+    public float getDirection(int x, int y) {
+        int index = x + width * y;
+        return (float) Math.atan2(gy[index], gx[index]);
+    }
+
+    /**
+     * @return magnitude of every pixel, row by row. The array may be longer than width * height
+     */
+    public float[] getMagnitudes() {
+        return magnitudes;
+    }
+
+    float getMagnitude(int index) {
+        return magnitudes[index];
+    }
+}
@@ -0,0 +1,65 @@
+package com.juankysoriano.rainbow.core.cv.edgedetector;
+
+import java.util.Arrays;
+
+/**
+ * Points found by {@link EdgeDetector}, packed as x, y pairs in a single int array.
+ * <p/>
+ * Meant to be kept and passed again to every extraction, so the array only grows until it fits the
+ * largest set of points and extracting does not allocate afterwards.
+ */
+public class EdgePoints {
+    private static final int INITIAL_CAPACITY = 256;
+    private int[] coordinates;
+    private int size;
+
+    public EdgePoints() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public EdgePoints(int capacity) {
+        coordinates = new int[Math.max(1, capacity) * 2];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getX(int index) {
+        return coordinates[index * 2];
+    }
+
+    public int getY(int index) {
+        return coordinates[index * 2 + 1];
+    }
+
+    /**
+     * @return x, y pairs of every point, packed. The array may be longer than {@link #size()} * 2
+     */
+    public int[] getCoordinates() {
+        return coordinates;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    void add(int x, int y) {
+        ensureCapacity(size + 1);
+        coordinates[size * 2] = x;
+        coordinates[size * 2 + 1] = y;
+        size++;
+    }
+
+    void addAll(EdgePoints points) {
+        ensureCapacity(size + points.size);
+        System.arraycopy(points.coordinates, 0, coordinates, size * 2, points.size * 2);
+        size += points.size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity * 2 > coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, Math.max(capacity * 2, coordinates.length << 1));
+        }
+    }
+}
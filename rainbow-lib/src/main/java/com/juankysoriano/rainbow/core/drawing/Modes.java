@@ -48,6 +48,7 @@ public interface Modes {
 
     enum Filter {
         BLUR,
+        FAST_BLUR,
         GRAY,
         RGB,
         INVERT,
@@ -58,6 +59,16 @@ public interface Modes {
         DILATE
     }
 
+    enum Morphology {
+        ERODE,
+        DILATE,
+        OPEN,
+        CLOSE,
+        GRADIENT,
+        TOP_HAT,
+        BLACK_TOP_HAT
+    }
+
     enum Image {
         RGB,  // image & color
         ARGB,  // image
@@ -4,9 +4,12 @@ import android.graphics.Bitmap;
 import android.graphics.Shader;
 import android.net.Uri;
 
+import com.juankysoriano.rainbow.core.graphics.RainbowFilterChain;
 import com.juankysoriano.rainbow.core.graphics.RainbowGraphics;
 import com.juankysoriano.rainbow.core.graphics.RainbowGraphics2D;
 import com.juankysoriano.rainbow.core.graphics.RainbowImage;
+import com.juankysoriano.rainbow.core.graphics.RainbowPixelView;
+import com.juankysoriano.rainbow.core.graphics.StructuringElement;
 import com.juankysoriano.rainbow.core.matrix.RMatrix;
 import com.juankysoriano.rainbow.core.matrix.RMatrix2D;
 import com.juankysoriano.rainbow.core.matrix.RMatrix3D;
@@ -301,8 +304,26 @@ public class RainbowDrawer {
         graphics.updatePixels();
     }
 
+    /**
+     * Faster alternative to loadPixels()/updatePixels() for sketches touching pixels every frame.
+     */
+    public RainbowPixelView getPixelView() {
+        return graphics.getPixelView();
+    }
+
+    /**
+     * Same as {@link #loadPixels()}, but only the pixels between the given corners are copied.
+     */
+    public void loadPixels(int x1, int y1, int x2, int y2) {
+        graphics.loadPixels(x1, y1, x2 - x1, y2 - y1);
+        pixels = graphics.pixels;
+    }
+
+    /**
+     * Only the pixels between the given corners are uploaded, so the cost is proportional to the region.
+     */
     public void updatePixels(int x1, int y1, int x2, int y2) {
-        graphics.updatePixels(x1, y1, x2, y2);
+        graphics.updatePixels(x1, y1, x2 - x1, y2 - y1);
     }
 
     protected void flush() {
@@ -517,6 +538,24 @@ public class RainbowDrawer {
         graphics.point(x, y, z);
     }
 
+    /**
+     * Much faster than {@link #point(float...)} for large point clouds, see {@link RainbowGraphics2D#points}.
+     *
+     * @param xy packed x, y coordinates
+     */
+    public void points(float[] xy) {
+        graphics.points(xy, 0, xy.length / 2, null, Modes.Blend.BLEND);
+    }
+
+    /**
+     * @param xy     packed x, y coordinates
+     * @param colors one color per point, or null to use the stroke color
+     * @param mode   BLEND or ADD
+     */
+    public void points(float[] xy, int[] colors, Modes.Blend mode) {
+        graphics.points(xy, 0, xy.length / 2, colors, mode);
+    }
+
     public void line(float... vertex) {
         graphics.line(vertex);
     }
@@ -1662,6 +1701,7 @@ public class RainbowDrawer {
      * <p/>
      * <UL>
      * <LI>filter(BLUR) provides a basic blur.
+     * <LI>filter(FAST_BLUR) approximates it with box blurs.
      * <LI>filter(GRAY) converts the image to grayscale based on luminance.
      * <LI>filter(INVERT) will invert the color components in the image.
      * <LI>filter(OPAQUE) set all the high bits in the image to opaque
@@ -1686,6 +1726,9 @@ public class RainbowDrawer {
      * <UL>
      * <LI>filter(BLUR, int radius) performs a gaussian blur of the specified
      * radius.
+     * <LI>filter(FAST_BLUR, int radius) approximates the same blur with three
+     * box blurs, whose cost does not grow with the radius. Colors are weighted
+     * by their alpha, so transparent pixels do not make halos.
      * <LI>filter(POSTERIZE, int levels) will posterize the image to between 2
      * and 255 levels.
      * <LI>filter(THRESHOLD, float center) allows you to set the center point
@@ -1699,6 +1742,21 @@ public class RainbowDrawer {
         graphics.filter(mode, param);
     }
 
+    /**
+     * Applies a morphological operation, ordering colors by luminance, see
+     * {@link RainbowImage#morphology(Modes.Morphology, StructuringElement)}
+     */
+    public void morphology(Modes.Morphology operation, StructuringElement element) {
+        graphics.morphology(operation, element);
+    }
+
+    /**
+     * @return an empty chain of point-wise filters, applied in a single pass over the pixels
+     */
+    public RainbowFilterChain filterChain() {
+        return graphics.filterChain();
+    }
+
     /**
      * Copy things from one area of this image to another area in the same
      * image.
@@ -0,0 +1,91 @@
+package com.juankysoriano.rainbow.core.frame;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.Choreographer;
+
+import com.juankysoriano.rainbow.utils.schedulers.RainbowScheduler;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Clock driven by the display vsync. Vsync signals are received on a dedicated looper thread and the frame
+ * is handed over to the given scheduler. If the previous frame has not been consumed yet the new vsync is
+ * coalesced into it, so the drawing thread never accumulates a queue of stale frames.
+ */
+public class ChoreographerFrameClock implements FrameClock, Choreographer.FrameCallback {
+    private final RainbowScheduler scheduler;
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    private final Runnable frameTask = new Runnable() {
+        @Override
+        public void run() {
+            framePending.set(false);
+            Callback frameCallback = callback;
+            if (running && frameCallback != null) {
+                frameCallback.doFrame(lastFrameTimeNanos);
+            }
+        }
+    };
+    private HandlerThread vsyncThread;
+    private volatile Callback callback;
+    private volatile boolean running;
+    private volatile long lastFrameTimeNanos;
+
+    public ChoreographerFrameClock(RainbowScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void start(Callback callback) {
+        if (running) {
+            return;
+        }
+        this.callback = callback;
+        running = true;
+        vsyncThread = new HandlerThread("Vsync", Process.THREAD_PRIORITY_DISPLAY);
+        vsyncThread.start();
+        new Handler(vsyncThread.getLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(ChoreographerFrameClock.this);
+            }
+        });
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+        lastFrameTimeNanos = frameTimeNanos;
+        if (framePending.compareAndSet(false, true)) {
+            dispatchFrame();
+        }
+    }
+
+    private void dispatchFrame() {
+        try {
+            scheduler.scheduleNow(frameTask);
+        } catch (RejectedExecutionException e) {
+            framePending.set(false);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        callback = null;
+        if (vsyncThread != null) {
+            vsyncThread.quit();
+            vsyncThread = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
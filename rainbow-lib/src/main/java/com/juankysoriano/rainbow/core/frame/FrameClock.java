@@ -0,0 +1,20 @@
+package com.juankysoriano.rainbow.core.frame;
+
+/**
+ * Source of frame ticks for a {@link FramePacer}.
+ * <p/>
+ * Implementations decide on which thread the callback is delivered, so a clock bound to the display
+ * (like {@link ChoreographerFrameClock}) can hand frames to the drawing thread, while a {@link ManualFrameClock}
+ * delivers them synchronously to whoever ticks it.
+ */
+public interface FrameClock {
+    void start(Callback callback);
+
+    void stop();
+
+    boolean isRunning();
+
+    interface Callback {
+        void doFrame(long frameTimeNanos);
+    }
+}
@@ -0,0 +1,141 @@
+package com.juankysoriano.rainbow.core.frame;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs step and draw as a single pipeline for every frame delivered by a {@link FrameClock}.
+ * <p/>
+ * Frames arriving faster than the requested frame rate are ignored. When frames arrive late, the steps that
+ * would have been performed in between are caught up before drawing, up to {@code maxCatchUpSteps} extra
+ * steps per frame. Anything beyond that is skipped and reported in {@link FrameStats}.
+ */
+public class FramePacer implements FrameClock.Callback {
+    public static final int DEFAULT_MAX_CATCH_UP_STEPS = 4;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long NO_FRAME = -1;
+    private final Runnable stepTask;
+    private final Runnable drawTask;
+    private final FrameStats frameStats;
+    private FrameClock clock;
+    private long frameIntervalNanos;
+    private long stepIntervalNanos;
+    private int maxCatchUpSteps = DEFAULT_MAX_CATCH_UP_STEPS;
+    private long lastFrameTimeNanos = NO_FRAME;
+    private boolean fixedTimestep;
+    private long accumulatorNanos;
+    private float interpolationAlpha;
+
+    public FramePacer(Runnable stepTask, Runnable drawTask) {
+        this.stepTask = stepTask;
+        this.drawTask = drawTask;
+        this.frameStats = new FrameStats();
+        setRates(60, 60);
+    }
+
+    public void setRates(int stepRate, int frameRate) {
+        this.stepIntervalNanos = SECOND / stepRate;
+        this.frameIntervalNanos = SECOND / frameRate;
+    }
+
+    public void setMaxCatchUpSteps(int maxCatchUpSteps) {
+        this.maxCatchUpSteps = Math.max(0, maxCatchUpSteps);
+    }
+
+    public void setFixedTimestep(boolean fixedTimestep) {
+        this.fixedTimestep = fixedTimestep;
+    }
+
+    public boolean isFixedTimestep() {
+        return fixedTimestep;
+    }
+
+    /**
+     * @return how far, between 0 and 1, the current frame lies between the last step and the next one.
+     * Always 1 unless running in fixed timestep mode.
+     */
+    public float getInterpolationAlpha() {
+        return interpolationAlpha;
+    }
+
+    public void start(FrameClock clock) {
+        stop();
+        this.clock = clock;
+        lastFrameTimeNanos = NO_FRAME;
+        accumulatorNanos = 0;
+        interpolationAlpha = 1;
+        clock.start(this);
+    }
+
+    public void stop() {
+        if (clock != null) {
+            clock.stop();
+            clock = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return clock != null && clock.isRunning();
+    }
+
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (lastFrameTimeNanos == NO_FRAME) {
+            lastFrameTimeNanos = frameTimeNanos;
+            performFrame(1);
+            return;
+        }
+
+        long elapsedNanos = frameTimeNanos - lastFrameTimeNanos;
+        if (isEarly(elapsedNanos)) {
+            return;
+        }
+
+        frameStats.recordFrame(elapsedNanos, frameIntervalNanos);
+        lastFrameTimeNanos = frameTimeNanos;
+        performFrame(accumulateSteps(elapsedNanos));
+    }
+
+    /**
+     * Vsync is not perfectly regular, so frames are accepted up to a quarter of an interval early.
+     * Otherwise a frame rate equal to the display refresh rate would randomly skip every other vsync.
+     */
+    private boolean isEarly(long elapsedNanos) {
+        return elapsedNanos < frameIntervalNanos - (frameIntervalNanos >> 2);
+    }
+
+    /**
+     * The time left after the due steps is carried over to the next frame, so steps keep the requested rate
+     * even when it is not a multiple of the frame rate, and a frame may have no step at all.
+     * <p/>
+     * When more steps are due than allowed the backlog is dropped rather than carried over, otherwise a
+     * slow frame would make the next one even slower until the sketch spirals into a death loop.
+     */
+    private int accumulateSteps(long elapsedNanos) {
+        accumulatorNanos += elapsedNanos;
+        int dueSteps = (int) (accumulatorNanos / stepIntervalNanos);
+        int allowedSteps = allowedSteps();
+        accumulatorNanos -= dueSteps * stepIntervalNanos;
+        if (dueSteps > allowedSteps) {
+            frameStats.recordSkippedSteps(dueSteps - allowedSteps);
+            dueSteps = allowedSteps;
+        }
+        interpolationAlpha = fixedTimestep ? accumulatorNanos / (float) stepIntervalNanos : 1;
+        return dueSteps;
+    }
+
+    private int allowedSteps() {
+        int nominalSteps = (int) Math.max(1, (frameIntervalNanos + (stepIntervalNanos >> 1)) / stepIntervalNanos);
+        return nominalSteps + maxCatchUpSteps;
+    }
+
+    private void performFrame(int steps) {
+        for (int i = 0; i < steps; i++) {
+            stepTask.run();
+        }
+        drawTask.run();
+    }
+}
@@ -0,0 +1,73 @@
+package com.juankysoriano.rainbow.core.frame;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running statistics about the frames produced by a {@link FramePacer}.
+ * <p/>
+ * Jitter is reported as the standard deviation of the time between consecutive frames, a frame is
+ * considered dropped when it arrives more than one and a half intervals after the previous one.
+ */
+public class FrameStats {
+    private static final float NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private long frameCount;
+    private long droppedFrameCount;
+    private long skippedStepCount;
+    private double meanIntervalNanos;
+    private double intervalVarianceSum;
+    private long maxIntervalNanos;
+
+    synchronized void recordFrame(long intervalNanos, long expectedIntervalNanos) {
+        frameCount++;
+        double delta = intervalNanos - meanIntervalNanos;
+        meanIntervalNanos += delta / frameCount;
+        intervalVarianceSum += delta * (intervalNanos - meanIntervalNanos);
+        maxIntervalNanos = Math.max(maxIntervalNanos, intervalNanos);
+        if (intervalNanos * 2 > expectedIntervalNanos * 3) {
+            droppedFrameCount++;
+        }
+    }
+
+    synchronized void recordSkippedSteps(int steps) {
+        skippedStepCount += steps;
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    public synchronized long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    /**
+     * @return number of steps that were not performed because they exceeded the catch up cap
+     */
+    public synchronized long getSkippedStepCount() {
+        return skippedStepCount;
+    }
+
+    public synchronized float getAverageFrameTimeMillis() {
+        return (float) meanIntervalNanos / NANOS_PER_MILLI;
+    }
+
+    public synchronized float getMaxFrameTimeMillis() {
+        return maxIntervalNanos / NANOS_PER_MILLI;
+    }
+
+    public synchronized float getJitterMillis() {
+        if (frameCount < 2) {
+            return 0;
+        }
+        return (float) Math.sqrt(intervalVarianceSum / (frameCount - 1)) / NANOS_PER_MILLI;
+    }
+
+    public synchronized void reset() {
+        frameCount = 0;
+        droppedFrameCount = 0;
+        skippedStepCount = 0;
+        meanIntervalNanos = 0;
+        intervalVarianceSum = 0;
+        maxIntervalNanos = 0;
+    }
+}
@@ -0,0 +1,59 @@
+package com.juankysoriano.rainbow.core.frame;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deterministic clock which only produces frames when it is told to. Useful to drive a sketch offline
+ * or to verify frame pacing on the JVM without a display.
+ */
+public class ManualFrameClock implements FrameClock {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private final long frameIntervalNanos;
+    private long nowNanos;
+    private Callback callback;
+
+    public ManualFrameClock(int framesPerSecond) {
+        this.frameIntervalNanos = SECOND / framesPerSecond;
+    }
+
+    @Override
+    public void start(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public void stop() {
+        callback = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return callback != null;
+    }
+
+    /**
+     * Advances the clock one frame interval and delivers the frame.
+     */
+    public void tick() {
+        advance(frameIntervalNanos);
+    }
+
+    /**
+     * Advances the clock by the given amount and delivers a single frame at the new time,
+     * as a display would after missing some vsyncs.
+     */
+    public void advance(long nanos) {
+        nowNanos += nanos;
+        if (callback != null) {
+            callback.doFrame(nowNanos);
+        }
+    }
+
+    public long getFrameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+
+    public long nowNanos() {
+        return nowNanos;
+    }
+}
@@ -0,0 +1,313 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Separable blur behind {@link RainbowImage#filter(com.juankysoriano.rainbow.core.drawing.Modes.Filter, float)}.
+ * <p/>
+ * A horizontal pass reads the packed pixels and writes every channel into its own plane, then a vertical
+ * pass blends the planes back into the pixels. Planes are kept between calls, and large images split both
+ * passes in {@link PixelBands}. Near the borders the kernel is cut and
+ * renormalised, so the result is the same whatever the number of bands.
+ * <p/>
+ * For large radii, three box blurs with running sums approximate the kernel at a constant cost per pixel.
+ * They may blend premultiplied colors, so transparent pixels do not darken their opaque neighbours.
+ */
+final class BlurEngine {
+    static final int ALPHA_CHANNEL = 1;
+    static final int RGB_CHANNELS = 3;
+    static final int ARGB_CHANNELS = 4;
+    private static final int BOX_PASSES = 3;
+    private static BlurEngine defaultEngine;
+
+    private final PixelBands pixelBands;
+    private int[][] planes = new int[ARGB_CHANNELS][0];
+    private int[][] boxPlanes = new int[ARGB_CHANNELS][0];
+
+    static synchronized BlurEngine getDefault() {
+        if (defaultEngine == null) {
+            defaultEngine = new BlurEngine(PixelBands.getDefault());
+        }
+        return defaultEngine;
+    }
+
+    private BlurEngine(PixelBands pixelBands) {
+        this.pixelBands = pixelBands;
+    }
+
+    /**
+     * @param channels {@link #ALPHA_CHANNEL} blurs the lowest byte, {@link #RGB_CHANNELS} makes the result
+     *                 opaque and {@link #ARGB_CHANNELS} blurs all four
+     * @param kernel   weights of the whole kernel, the first one applied radius pixels before the pixel
+     */
+    synchronized void blur(final int[] pixels, final int width, final int height, final int channels, int[] kernel, final int radius) {
+        ensurePlanes(planes, width * height, channels);
+        final int[] weights = kernel;
+        final int[] weightSums = new int[kernel.length + 1];
+        for (int i = 0; i < kernel.length; i++) {
+            weightSums[i + 1] = weightSums[i] + kernel[i];
+        }
+
+        int bands = pixelBands.count(width, height);
+        List<Callable<Void>> horizontalBands = new ArrayList<>(bands);
+        List<Callable<Void>> verticalBands = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            final int top = height * i / bands;
+            final int bottom = height * (i + 1) / bands;
+            horizontalBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    blurRows(pixels, width, channels, radius, weights, weightSums, top, bottom);
+                    return null;
+                }
+            });
+            verticalBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    blurColumns(pixels, width, height, channels, radius, weights, weightSums, top, bottom);
+                    return null;
+                }
+            });
+        }
+        pixelBands.run(horizontalBands);
+        pixelBands.run(verticalBands);
+    }
+
+    private static void ensurePlanes(int[][] planes, int size, int channels) {
+        for (int channel = 0; channel < channels; channel++) {
+            if (planes[channel].length < size) {
+                planes[channel] = new int[size];
+            }
+        }
+    }
+
+    private void blurRows(int[] pixels, int width, int channels, int radius, int[] weights, int[] weightSums, int top, int bottom) {
+        int[] alphas = planes[0];
+        int[] reds = planes[channels == ARGB_CHANNELS ? 1 : 0];
+        int[] greens = planes[channels == ARGB_CHANNELS ? 2 : 1];
+        int[] blues = planes[channels == ARGB_CHANNELS ? 3 : channels == RGB_CHANNELS ? 2 : 0];
+        for (int y = top; y < bottom; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int first = Math.max(0, x - radius);
+                int last = Math.min(width - 1, x - radius + weights.length - 1);
+                int weight = first - (x - radius);
+                int sum = weightSums[weight + last - first + 1] - weightSums[weight];
+                int ca = 0, cr = 0, cg = 0, cb = 0;
+                for (int read = row + first; read <= row + last; read++, weight++) {
+                    int c = pixels[read];
+                    int k = weights[weight];
+                    ca += k * (c >>> 24);
+                    cr += k * (c >> 16 & 0xFF);
+                    cg += k * (c >> 8 & 0xFF);
+                    cb += k * (c & 0xFF);
+                }
+                int index = row + x;
+                blues[index] = cb / sum;
+                if (channels != ALPHA_CHANNEL) {
+                    reds[index] = cr / sum;
+                    greens[index] = cg / sum;
+                }
+                if (channels == ARGB_CHANNELS) {
+                    alphas[index] = ca / sum;
+                }
+            }
+        }
+    }
+
+    private void blurColumns(int[] pixels, int width, int height, int channels, int radius, int[] weights, int[] weightSums, int top, int bottom) {
+        int[] alphas = planes[0];
+        int[] reds = planes[channels == ARGB_CHANNELS ? 1 : 0];
+        int[] greens = planes[channels == ARGB_CHANNELS ? 2 : 1];
+        int[] blues = planes[channels == ARGB_CHANNELS ? 3 : channels == RGB_CHANNELS ? 2 : 0];
+        for (int y = top; y < bottom; y++) {
+            int first = Math.max(0, y - radius);
+            int last = Math.min(height - 1, y - radius + weights.length - 1);
+            int firstWeight = first - (y - radius);
+            int sum = weightSums[firstWeight + last - first + 1] - weightSums[firstWeight];
+            for (int x = 0; x < width; x++) {
+                int ca = 0, cr = 0, cg = 0, cb = 0;
+                int weight = firstWeight;
+                for (int read = first * width + x; read <= last * width + x; read += width, weight++) {
+                    int k = weights[weight];
+                    cb += k * blues[read];
+                    if (channels != ALPHA_CHANNEL) {
+                        cr += k * reds[read];
+                        cg += k * greens[read];
+                    }
+                    if (channels == ARGB_CHANNELS) {
+                        ca += k * alphas[read];
+                    }
+                }
+                int index = y * width + x;
+                if (channels == ALPHA_CHANNEL) {
+                    pixels[index] = cb / sum;
+                } else if (channels == RGB_CHANNELS) {
+                    pixels[index] = 0xff000000 | (cr / sum) << 16 | (cg / sum) << 8 | (cb / sum);
+                } else {
+                    pixels[index] = (ca / sum) << 24 | (cr / sum) << 16 | (cg / sum) << 8 | (cb / sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Approximates a kernel of the given radius, whose weights fall with the square of the distance to its
+     * end, by three box blurs of the same variance. Every box keeps a running sum, so the cost per pixel does
+     * not depend on the radius.
+     *
+     * @param premultiplied with {@link #ARGB_CHANNELS}, whether colors are weighted by their alpha while blurred
+     */
+    synchronized void boxBlur(final int[] pixels, final int width, final int height, final int channels, int kernelRadius,
+                              final boolean premultiplied) {
+        // The kernel variance is about radius^2 / 10, and three boxes of radius b add up to b * (b + 1)
+        final int boxRadius = Math.max(1, (int) Math.round(Math.sqrt((float) kernelRadius * kernelRadius / 10f + 0.25f) - 0.5f));
+        final int size = width * height;
+        ensurePlanes(planes, size, channels);
+        ensurePlanes(boxPlanes, size, channels);
+
+        int bands = pixelBands.count(width, height);
+        List<Callable<Void>> rowBands = new ArrayList<>(bands);
+        List<Callable<Void>> columnBands = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            final int top = height * i / bands;
+            final int bottom = height * (i + 1) / bands;
+            final int left = width * i / bands;
+            final int right = width * (i + 1) / bands;
+            rowBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    unpack(pixels, channels, premultiplied, top * width, bottom * width);
+                    for (int channel = 0; channel < channels; channel++) {
+                        for (int pass = 0; pass < BOX_PASSES; pass++) {
+                            int[] source = pass % 2 == 0 ? planes[channel] : boxPlanes[channel];
+                            int[] target = pass % 2 == 0 ? boxPlanes[channel] : planes[channel];
+                            boxRows(source, target, width, boxRadius, top, bottom);
+                        }
+                    }
+                    return null;
+                }
+            });
+            columnBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    // Odd number of passes, the rows ended up in the box planes and the columns end up in the planes
+                    for (int channel = 0; channel < channels; channel++) {
+                        for (int pass = 0; pass < BOX_PASSES; pass++) {
+                            int[] source = pass % 2 == 0 ? boxPlanes[channel] : planes[channel];
+                            int[] target = pass % 2 == 0 ? planes[channel] : boxPlanes[channel];
+                            boxColumns(source, target, width, height, boxRadius, left, right);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        pixelBands.run(rowBands);
+        pixelBands.run(columnBands);
+        pack(pixels, size, channels, premultiplied, planes);
+    }
+
+    private void unpack(int[] pixels, int channels, boolean premultiplied, int from, int to) {
+        for (int index = from; index < to; index++) {
+            int c = pixels[index];
+            if (channels == ALPHA_CHANNEL) {
+                planes[0][index] = c & 0xFF;
+            } else if (channels == RGB_CHANNELS) {
+                planes[0][index] = c >> 16 & 0xFF;
+                planes[1][index] = c >> 8 & 0xFF;
+                planes[2][index] = c & 0xFF;
+            } else {
+                int alpha = c >>> 24;
+                planes[0][index] = alpha;
+                if (premultiplied) {
+                    planes[1][index] = ((c >> 16 & 0xFF) * alpha + 127) / 255;
+                    planes[2][index] = ((c >> 8 & 0xFF) * alpha + 127) / 255;
+                    planes[3][index] = ((c & 0xFF) * alpha + 127) / 255;
+                } else {
+                    planes[1][index] = c >> 16 & 0xFF;
+                    planes[2][index] = c >> 8 & 0xFF;
+                    planes[3][index] = c & 0xFF;
+                }
+            }
+        }
+    }
+
+    private static void pack(int[] pixels, int size, int channels, boolean premultiplied, int[][] planes) {
+        for (int index = 0; index < size; index++) {
+            if (channels == ALPHA_CHANNEL) {
+                pixels[index] = planes[0][index];
+            } else if (channels == RGB_CHANNELS) {
+                pixels[index] = 0xff000000 | planes[0][index] << 16 | planes[1][index] << 8 | planes[2][index];
+            } else if (premultiplied) {
+                int alpha = planes[0][index];
+                pixels[index] = alpha == 0
+                        ? 0
+                        : alpha << 24 | unpremultiply(planes[1][index], alpha) << 16 | unpremultiply(planes[2][index], alpha) << 8 | unpremultiply(planes[3][index], alpha);
+            } else {
+                pixels[index] = planes[0][index] << 24 | planes[1][index] << 16 | planes[2][index] << 8 | planes[3][index];
+            }
+        }
+    }
+
+    private static int unpremultiply(int value, int alpha) {
+        return Math.min(255, (value * 255 + (alpha >> 1)) / alpha);
+    }
+
+    /**
+     * Box average of every row of the band, over the pixels of the window inside the image.
+     */
+    static void boxRows(int[] source, int[] target, int width, int radius, int top, int bottom) {
+        for (int y = top; y < bottom; y++) {
+            int row = y * width;
+            int sum = 0;
+            int count = 0;
+            for (int x = 0; x < Math.min(radius, width); x++) {
+                sum += source[row + x];
+                count++;
+            }
+            for (int x = 0; x < width; x++) {
+                int entering = x + radius;
+                if (entering < width) {
+                    sum += source[row + entering];
+                    count++;
+                }
+                int leaving = x - radius - 1;
+                if (leaving >= 0) {
+                    sum -= source[row + leaving];
+                    count--;
+                }
+                target[row + x] = (sum + (count >> 1)) / count;
+            }
+        }
+    }
+
+    /**
+     * Box average of every column of the band, over the pixels of the window inside the image.
+     */
+    static void boxColumns(int[] source, int[] target, int width, int height, int radius, int left, int right) {
+        for (int x = left; x < right; x++) {
+            int sum = 0;
+            int count = 0;
+            for (int y = 0; y < Math.min(radius, height); y++) {
+                sum += source[y * width + x];
+                count++;
+            }
+            for (int y = 0; y < height; y++) {
+                int entering = y + radius;
+                if (entering < height) {
+                    sum += source[entering * width + x];
+                    count++;
+                }
+                int leaving = y - radius - 1;
+                if (leaving >= 0) {
+                    sum -= source[leaving * width + x];
+                    count--;
+                }
+                target[y * width + x] = (sum + (count >> 1)) / count;
+            }
+        }
+    }
+}
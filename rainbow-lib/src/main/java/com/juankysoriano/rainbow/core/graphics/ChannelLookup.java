@@ -0,0 +1,191 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Point-wise filter compiled into one table per color channel, applied with three lookups per pixel.
+ * <p/>
+ * Every table gives the packed contribution of its channel, and the contributions of the three channels are
+ * or-ed, keeping the alpha of the pixel. Filters that map every channel on its own write their channel only,
+ * while filters that depend on several channels, like a threshold on the brightest one, write all of them.
+ * A lookup whose channels are independent can be merged with the one that follows it, so a run of them in a
+ * chain costs a single lookup per channel.
+ * <p/>
+ * Tables only depend on the parameters of the filter, so the ones built from parameters are cached and shared.
+ */
+final class ChannelLookup extends PixelOperation {
+    static final int SIZE = 256;
+    private static final int ALPHA_MASK = 0xff000000;
+    private static final int MAX_CACHED_LOOKUPS = 32;
+    private static final Map<String, ChannelLookup> CACHE = new LinkedHashMap<String, ChannelLookup>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ChannelLookup> eldest) {
+            return size() > MAX_CACHED_LOOKUPS;
+        }
+    };
+
+    private final int[] reds;
+    private final int[] greens;
+    private final int[] blues;
+    private final boolean separable;
+
+    private ChannelLookup(int[] reds, int[] greens, int[] blues, boolean separable) {
+        this.reds = reds;
+        this.greens = greens;
+        this.blues = blues;
+        this.separable = separable;
+    }
+
+    /**
+     * @param red new value of the red channel for each of its values, the same for the other channels
+     */
+    static ChannelLookup ofCurves(int[] red, int[] green, int[] blue) {
+        int[] reds = new int[SIZE];
+        int[] greens = new int[SIZE];
+        int[] blues = new int[SIZE];
+        for (int value = 0; value < SIZE; value++) {
+            reds[value] = red[value] << 16;
+            greens[value] = green[value] << 8;
+            blues[value] = blue[value];
+        }
+        return new ChannelLookup(reds, greens, blues, true);
+    }
+
+    private static ChannelLookup ofCurve(int[] curve) {
+        return ofCurves(curve, curve, curve);
+    }
+
+    private static synchronized ChannelLookup cached(String key) {
+        return CACHE.get(key);
+    }
+
+    private static synchronized ChannelLookup cache(String key, ChannelLookup lookup) {
+        CACHE.put(key, lookup);
+        return lookup;
+    }
+
+    static ChannelLookup invert() {
+        String key = "invert";
+        ChannelLookup lookup = cached(key);
+        if (lookup == null) {
+            int[] curve = new int[SIZE];
+            for (int value = 0; value < SIZE; value++) {
+                curve[value] = 255 - value;
+            }
+            lookup = cache(key, ofCurve(curve));
+        }
+        return lookup;
+    }
+
+    static ChannelLookup posterize(int levels) {
+        String key = "posterize " + levels;
+        ChannelLookup lookup = cached(key);
+        if (lookup == null) {
+            int levels1 = levels - 1;
+            int[] curve = new int[SIZE];
+            for (int value = 0; value < SIZE; value++) {
+                curve[value] = (((value * levels) >> 8) * 255) / levels1;
+            }
+            lookup = cache(key, ofCurve(curve));
+        }
+        return lookup;
+    }
+
+    /**
+     * White where the brightest channel reaches the threshold, which is the same as where any channel does
+     */
+    static ChannelLookup threshold(int thresh) {
+        String key = "threshold " + thresh;
+        ChannelLookup lookup = cached(key);
+        if (lookup == null) {
+            int[] table = new int[SIZE];
+            for (int value = 0; value < SIZE; value++) {
+                table[value] = value < thresh ? 0x000000 : 0xffffff;
+            }
+            lookup = cache(key, new ChannelLookup(table, table, table, false));
+        }
+        return lookup;
+    }
+
+    static ChannelLookup gamma(float gamma) {
+        String key = "gamma " + gamma;
+        ChannelLookup lookup = cached(key);
+        if (lookup == null) {
+            int[] curve = new int[SIZE];
+            for (int value = 0; value < SIZE; value++) {
+                curve[value] = clamp(Math.round(255 * (float) Math.pow(value / 255f, 1 / gamma)));
+            }
+            lookup = cache(key, ofCurve(curve));
+        }
+        return lookup;
+    }
+
+    static ChannelLookup levels(int inputBlack, int inputWhite, int outputBlack, int outputWhite) {
+        String key = "levels " + inputBlack + " " + inputWhite + " " + outputBlack + " " + outputWhite;
+        ChannelLookup lookup = cached(key);
+        if (lookup == null) {
+            int inputRange = inputWhite - inputBlack;
+            int outputRange = outputWhite - outputBlack;
+            int[] curve = new int[SIZE];
+            for (int value = 0; value < SIZE; value++) {
+                int input = Math.min(inputRange, Math.max(0, value - inputBlack));
+                curve[value] = outputBlack + (input * outputRange + (inputRange >> 1)) / inputRange;
+            }
+            lookup = cache(key, ofCurve(curve));
+        }
+        return lookup;
+    }
+
+    static ChannelLookup brightnessContrast(float brightness, float contrast) {
+        String key = "brightnessContrast " + brightness + " " + contrast;
+        ChannelLookup lookup = cached(key);
+        if (lookup == null) {
+            int[] curve = new int[SIZE];
+            for (int value = 0; value < SIZE; value++) {
+                curve[value] = clamp(Math.round((value - 128) * contrast + 128 + brightness * 255));
+            }
+            lookup = cache(key, ofCurve(curve));
+        }
+        return lookup;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    /**
+     * @return whether {@link #then(ChannelLookup)} can merge this lookup with the next one
+     */
+    boolean isSeparable() {
+        return separable;
+    }
+
+    /**
+     * @return a single lookup doing this one and then the next one, only for separable lookups
+     */
+    ChannelLookup then(ChannelLookup next) {
+        int[] mergedReds = new int[SIZE];
+        int[] mergedGreens = new int[SIZE];
+        int[] mergedBlues = new int[SIZE];
+        for (int value = 0; value < SIZE; value++) {
+            mergedReds[value] = next.reds[reds[value] >> 16];
+            mergedGreens[value] = next.greens[greens[value] >> 8];
+            mergedBlues[value] = next.blues[blues[value]];
+        }
+        return new ChannelLookup(mergedReds, mergedGreens, mergedBlues, next.separable);
+    }
+
+    @Override
+    ChannelLookup asLookup() {
+        return this;
+    }
+
+    @Override
+    void apply(int[] pixels, int from, int to) {
+        for (int index = from; index < to; index++) {
+            int color = pixels[index];
+            pixels[index] = (color & ALPHA_MASK) | reds[color >> 16 & 0xff] | greens[color >> 8 & 0xff] | blues[color & 0xff];
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Bounding box, in bitmap coordinates, of everything drawn on a surface since the last frame was presented.
+ * <p/>
+ * It can be shared by several graphics drawing on the same bitmap, like the sketch and the input controller
+ * ones, hence it is synchronized.
+ */
+class DamageRegion {
+    private final RectF bounds = new RectF();
+    private boolean empty = true;
+    private boolean full = true;
+    private long version;
+
+    synchronized void add(RectF rect) {
+        add(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    synchronized void add(float left, float top, float right, float bottom) {
+        version++;
+        if (full) {
+            return;
+        }
+        if (empty) {
+            bounds.set(left, top, right, bottom);
+            empty = false;
+        } else {
+            bounds.union(left, top, right, bottom);
+        }
+    }
+
+    synchronized void addAll() {
+        version++;
+        full = true;
+    }
+
+    /**
+     * @return a number that changes whenever something is drawn, regardless of frames being consumed
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Retrieves the damaged area and starts tracking a new frame.
+     *
+     * @param out       receives the damaged area, empty if nothing was drawn
+     * @param threshold fraction of the surface above which presenting the damaged area is not worth it
+     * @return false when the whole surface has to be presented
+     */
+    synchronized boolean consume(Rect out, int width, int height, float threshold) {
+        boolean partial = !full;
+        if (partial && empty) {
+            out.setEmpty();
+        } else if (partial) {
+            bounds.roundOut(out);
+            if (!out.intersect(0, 0, width, height)) {
+                out.setEmpty();
+            }
+            partial = out.width() * out.height() <= threshold * width * height;
+        }
+        full = false;
+        empty = true;
+        return partial;
+    }
+}
@@ -0,0 +1,495 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import com.juankysoriano.rainbow.core.drawing.Modes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Grayscale morphology behind {@link RainbowImage#morphology(Modes.Morphology, StructuringElement)}, using
+ * luminance to order the colors.
+ * <p/>
+ * Every pixel is turned once into a key holding its luminance above its color, so the lightest color of a
+ * neighbourhood is the largest key, and compound operations never compute luminance again. Erosion inverts
+ * the bits of the keys, which reverses their order, dilates and inverts them back, so every pass only looks
+ * for maxima.
+ * <p/>
+ * Runs of pixels take the maximum of a window with the van Herk/Gil-Werman algorithm, which costs three
+ * comparisons per pixel whatever the size of the window. Rectangles are a horizontal pass followed by a
+ * vertical one, other elements combine a horizontal pass per row they cover, and elements of at most 3x3
+ * pixels just compare the neighbours. Buffers are kept between calls, and passes are split in
+ * {@link PixelBands}.
+ */
+final class MorphologyEngine {
+    // Below every key, inverted or not, so pixels outside the image never win
+    private static final long OUTSIDE = Long.MIN_VALUE;
+    private static final int COLUMN_LANES = 16;
+    private static MorphologyEngine defaultEngine;
+
+    private final PixelBands pixelBands;
+    private long[] keys = new long[0];
+    private long[] otherKeys = new long[0];
+    private long[] passKeys = new long[0];
+    private int[] luminances = new int[0];
+    private int[] outPixels = new int[0];
+    private LineBuffers[] lineBuffers = new LineBuffers[0];
+
+    static synchronized MorphologyEngine getDefault() {
+        if (defaultEngine == null) {
+            defaultEngine = new MorphologyEngine(PixelBands.getDefault());
+        }
+        return defaultEngine;
+    }
+
+    private MorphologyEngine(PixelBands pixelBands) {
+        this.pixelBands = pixelBands;
+    }
+
+    synchronized void apply(int[] pixels, int width, int height, StructuringElement element, Modes.Morphology operation) {
+        int size = width * height;
+        if (element.isSmall() && (operation == Modes.Morphology.ERODE || operation == Modes.Morphology.DILATE)) {
+            compareNeighbours(pixels, width, height, element, operation == Modes.Morphology.DILATE);
+            return;
+        }
+        if (keys.length < size) {
+            keys = new long[size];
+            passKeys = new long[size];
+        }
+        toKeys(pixels, keys, size);
+        switch (operation) {
+            case ERODE:
+                erode(keys, width, height, element);
+                fromKeys(keys, pixels, size);
+                break;
+            case DILATE:
+                dilate(keys, width, height, element);
+                fromKeys(keys, pixels, size);
+                break;
+            case OPEN:
+                erode(keys, width, height, element);
+                dilate(keys, width, height, element);
+                fromKeys(keys, pixels, size);
+                break;
+            case CLOSE:
+                dilate(keys, width, height, element);
+                erode(keys, width, height, element);
+                fromKeys(keys, pixels, size);
+                break;
+            case GRADIENT:
+                if (otherKeys.length < size) {
+                    otherKeys = new long[size];
+                }
+                System.arraycopy(keys, 0, otherKeys, 0, size);
+                dilate(keys, width, height, element);
+                erode(otherKeys, width, height, element);
+                for (int i = 0; i < size; i++) {
+                    pixels[i] = subtract((int) keys[i], (int) otherKeys[i], pixels[i]);
+                }
+                break;
+            case TOP_HAT:
+                erode(keys, width, height, element);
+                dilate(keys, width, height, element);
+                for (int i = 0; i < size; i++) {
+                    pixels[i] = subtract(pixels[i], (int) keys[i], pixels[i]);
+                }
+                break;
+            case BLACK_TOP_HAT:
+                dilate(keys, width, height, element);
+                erode(keys, width, height, element);
+                for (int i = 0; i < size; i++) {
+                    pixels[i] = subtract((int) keys[i], pixels[i], pixels[i]);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Erosion or dilation by an element of at most 3x3 pixels, in a single pass that reads the few neighbours
+     * of every pixel directly, so no keys are needed. Luminance is computed once per pixel into a plane, and
+     * colors as light are ordered as their keys would be.
+     */
+    private void compareNeighbours(final int[] pixels, final int width, final int height, final StructuringElement element,
+                                   final boolean maximum) {
+        int size = width * height;
+        if (luminances.length < size) {
+            luminances = new int[size];
+            outPixels = new int[size];
+        }
+        // Erosion keeps the largest negated luminance, and among those the largest inverted color
+        final int sign = maximum ? 1 : -1;
+        final int colorOrder = maximum ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        final int[] offsets = neighbourOffsets(element, width);
+        int bands = pixelBands.count(width, height);
+        List<Callable<Void>> luminanceBands = new ArrayList<>(bands);
+        List<Callable<Void>> compareBands = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            final int top = height * i / bands;
+            final int bottom = height * (i + 1) / bands;
+            final int from = top * width;
+            final int to = bottom * width;
+            luminanceBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int index = from; index < to; index++) {
+                        int color = pixels[index];
+                        luminances[index] = sign * (77 * (color >> 16 & 0xff) + 151 * (color >> 8 & 0xff) + 28 * (color & 0xff));
+                    }
+                    return null;
+                }
+            });
+            compareBands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int y = top; y < bottom; y++) {
+                        if (y == 0 || y == height - 1) {
+                            for (int x = 0; x < width; x++) {
+                                outPixels[y * width + x] = lightestNeighbour(pixels, width, height, x, y, element, colorOrder);
+                            }
+                            continue;
+                        }
+                        outPixels[y * width] = lightestNeighbour(pixels, width, height, 0, y, element, colorOrder);
+                        for (int index = y * width + 1; index < (y + 1) * width - 1; index++) {
+                            outPixels[index] = lightestInnerNeighbour(pixels, index, offsets, colorOrder);
+                        }
+                        if (width > 1) {
+                            outPixels[(y + 1) * width - 1] = lightestNeighbour(pixels, width, height, width - 1, y, element, colorOrder);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        pixelBands.run(luminanceBands);
+        pixelBands.run(compareBands);
+        System.arraycopy(outPixels, 0, pixels, 0, size);
+    }
+
+    /**
+     * @return distance from every pixel to each of its neighbours in the element, for pixels away from the borders
+     */
+    private static int[] neighbourOffsets(StructuringElement element, int width) {
+        int[] offsets = new int[element.getHeight() * 3];
+        int count = 0;
+        for (int elementRow = 0; elementRow < element.getHeight(); elementRow++) {
+            int dy = elementRow - element.getTop();
+            for (int dx = -element.getBefore(elementRow); dx <= element.getAfter(elementRow); dx++) {
+                if (dx != 0 || dy != 0) {
+                    offsets[count++] = dy * width + dx;
+                }
+            }
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    private int lightestInnerNeighbour(int[] pixels, int index, int[] offsets, int colorOrder) {
+        int best = pixels[index];
+        int bestLuminance = luminances[index];
+        int bestOrder = best ^ colorOrder;
+        for (int offset : offsets) {
+            int luminance = luminances[index + offset];
+            if (luminance < bestLuminance) {
+                continue;
+            }
+            int color = pixels[index + offset];
+            int order = color ^ colorOrder;
+            if (luminance > bestLuminance || order > bestOrder) {
+                best = color;
+                bestLuminance = luminance;
+                bestOrder = order;
+            }
+        }
+        return best;
+    }
+
+    private int lightestNeighbour(int[] pixels, int width, int height, int x, int y, StructuringElement element, int colorOrder) {
+        int index = y * width + x;
+        int best = pixels[index];
+        int bestLuminance = luminances[index];
+        int bestOrder = best ^ colorOrder;
+        for (int elementRow = 0; elementRow < element.getHeight(); elementRow++) {
+            int sourceY = y + elementRow - element.getTop();
+            if (sourceY < 0 || sourceY >= height) {
+                continue;
+            }
+            int sourceRow = sourceY * width;
+            int last = Math.min(width - 1, x + element.getAfter(elementRow));
+            for (int sourceX = Math.max(0, x - element.getBefore(elementRow)); sourceX <= last; sourceX++) {
+                int luminance = luminances[sourceRow + sourceX];
+                if (luminance < bestLuminance) {
+                    continue;
+                }
+                int color = pixels[sourceRow + sourceX];
+                int order = color ^ colorOrder;
+                if (luminance > bestLuminance || order > bestOrder) {
+                    best = color;
+                    bestLuminance = luminance;
+                    bestOrder = order;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static void toKeys(int[] pixels, long[] keys, int size) {
+        for (int i = 0; i < size; i++) {
+            int color = pixels[i];
+            long luminance = 77 * (color >> 16 & 0xff) + 151 * (color >> 8 & 0xff) + 28 * (color & 0xff);
+            keys[i] = luminance << 32 | (color & 0xffffffffL);
+        }
+    }
+
+    private static void fromKeys(long[] keys, int[] pixels, int size) {
+        for (int i = 0; i < size; i++) {
+            pixels[i] = (int) keys[i];
+        }
+    }
+
+    private static void invert(long[] keys, int size) {
+        for (int i = 0; i < size; i++) {
+            keys[i] = ~keys[i];
+        }
+    }
+
+    /**
+     * @return difference of every color channel, not below 0, with the alpha of the original pixel
+     */
+    private static int subtract(int color, int subtracted, int original) {
+        int red = Math.max(0, (color >> 16 & 0xff) - (subtracted >> 16 & 0xff));
+        int green = Math.max(0, (color >> 8 & 0xff) - (subtracted >> 8 & 0xff));
+        int blue = Math.max(0, (color & 0xff) - (subtracted & 0xff));
+        return (original & 0xff000000) | red << 16 | green << 8 | blue;
+    }
+
+    private void erode(long[] keys, int width, int height, StructuringElement element) {
+        invert(keys, width * height);
+        dilate(keys, width, height, element);
+        invert(keys, width * height);
+    }
+
+    /**
+     * Replaces every key by the largest one of the element around it, ignoring the ones outside the image.
+     */
+    private void dilate(final long[] keys, final int width, final int height, final StructuringElement element) {
+        int bands = pixelBands.count(width, height);
+        ensureLineBuffers(bands, width);
+        List<Callable<Void>> rowBands = new ArrayList<>(bands);
+        List<Callable<Void>> secondBands = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            final LineBuffers buffers = lineBuffers[i];
+            final int top = height * i / bands;
+            final int bottom = height * (i + 1) / bands;
+            final int left = width * i / bands;
+            final int right = width * (i + 1) / bands;
+            if (element.isRectangular() && !element.isSmall()) {
+                rowBands.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int y = top; y < bottom; y++) {
+                            buffers.rowMaximum(keys, passKeys, y * width, y * width, width, element.getBefore(0), element.getAfter(0));
+                        }
+                        return null;
+                    }
+                });
+                secondBands.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int above = element.getTop();
+                        int below = element.getHeight() - 1 - above;
+                        for (int x = left; x < right; x += COLUMN_LANES) {
+                            int lanes = Math.min(COLUMN_LANES, right - x);
+                            buffers.columnMaximum(passKeys, keys, x, width, lanes, height, above, below);
+                        }
+                        return null;
+                    }
+                });
+            } else {
+                rowBands.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int y = top; y < bottom; y++) {
+                            if (element.isSmall()) {
+                                compareNeighbours(keys, passKeys, width, height, y, element);
+                            } else {
+                                combineRows(keys, passKeys, width, height, y, element, buffers);
+                            }
+                        }
+                        return null;
+                    }
+                });
+                secondBands.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        System.arraycopy(passKeys, top * width, keys, top * width, (bottom - top) * width);
+                        return null;
+                    }
+                });
+            }
+        }
+        pixelBands.run(rowBands);
+        pixelBands.run(secondBands);
+    }
+
+    /**
+     * Maximum for one row of the output, comparing the few neighbours of a small element directly
+     */
+    private static void compareNeighbours(long[] keys, long[] target, int width, int height, int y, StructuringElement element) {
+        int row = y * width;
+        for (int x = 0; x < width; x++) {
+            long maximum = OUTSIDE;
+            for (int elementRow = 0; elementRow < element.getHeight(); elementRow++) {
+                int sourceY = y + elementRow - element.getTop();
+                if (sourceY < 0 || sourceY >= height) {
+                    continue;
+                }
+                int sourceRow = sourceY * width;
+                int last = Math.min(width - 1, x + element.getAfter(elementRow));
+                for (int sourceX = Math.max(0, x - element.getBefore(elementRow)); sourceX <= last; sourceX++) {
+                    maximum = Math.max(maximum, keys[sourceRow + sourceX]);
+                }
+            }
+            target[row + x] = maximum;
+        }
+    }
+
+    /**
+     * Maximum for one row of the output, of the runs of every row the element covers around it
+     */
+    private static void combineRows(long[] keys, long[] target, int width, int height, int y, StructuringElement element,
+                                    LineBuffers buffers) {
+        long[] run = buffers.run;
+        int row = y * width;
+        for (int x = 0; x < width; x++) {
+            target[row + x] = OUTSIDE;
+        }
+        for (int elementRow = 0; elementRow < element.getHeight(); elementRow++) {
+            int sourceY = y + elementRow - element.getTop();
+            if (sourceY < 0 || sourceY >= height) {
+                continue;
+            }
+            buffers.rowMaximum(keys, run, sourceY * width, 0, width, element.getBefore(elementRow), element.getAfter(elementRow));
+            for (int x = 0; x < width; x++) {
+                target[row + x] = Math.max(target[row + x], run[x]);
+            }
+        }
+    }
+
+    private void ensureLineBuffers(int bands, int width) {
+        if (lineBuffers.length < bands) {
+            LineBuffers[] grown = new LineBuffers[bands];
+            System.arraycopy(lineBuffers, 0, grown, 0, lineBuffers.length);
+            lineBuffers = grown;
+        }
+        for (int i = 0; i < bands; i++) {
+            if (lineBuffers[i] == null) {
+                lineBuffers[i] = new LineBuffers();
+            }
+            lineBuffers[i].ensureRun(width);
+        }
+    }
+
+    /**
+     * Scratch of a band. Van Herk/Gil-Werman splits a line, padded on both sides, in blocks as long as the
+     * window, and keeps the maxima from the start of every block to each element and from each element to the
+     * end of its block. Any window spans the end of a block and the start of the next, so its maximum is the
+     * one of a suffix and a prefix.
+     */
+    private static final class LineBuffers {
+        private long[] padded = new long[0];
+        private long[] prefix = new long[0];
+        private long[] suffix = new long[0];
+        private long[] run = new long[0];
+
+        void ensureRun(int width) {
+            if (run.length < width) {
+                run = new long[width];
+            }
+        }
+
+        /**
+         * @param before elements of the window before every element, after the same for elements after it
+         */
+        void rowMaximum(long[] source, long[] target, int sourceOffset, int targetOffset, int length, int before, int after) {
+            // Elements farther than the line length only cover the outside of the image
+            before = Math.min(before, length - 1);
+            after = Math.min(after, length - 1);
+            int window = before + after + 1;
+            int paddedLength = (length + window - 1 + window - 1) / window * window;
+            ensure(paddedLength);
+            for (int i = 0; i < before; i++) {
+                padded[i] = OUTSIDE;
+            }
+            System.arraycopy(source, sourceOffset, padded, before, length);
+            for (int i = before + length; i < paddedLength; i++) {
+                padded[i] = OUTSIDE;
+            }
+            for (int blockStart = 0; blockStart < paddedLength; blockStart += window) {
+                int blockEnd = blockStart + window - 1;
+                prefix[blockStart] = padded[blockStart];
+                for (int i = blockStart + 1; i <= blockEnd; i++) {
+                    prefix[i] = Math.max(prefix[i - 1], padded[i]);
+                }
+                suffix[blockEnd] = padded[blockEnd];
+                for (int i = blockEnd - 1; i >= blockStart; i--) {
+                    suffix[i] = Math.max(suffix[i + 1], padded[i]);
+                }
+            }
+            for (int position = 0; position < length; position++) {
+                target[targetOffset + position] = Math.max(suffix[position], prefix[position + window - 1]);
+            }
+        }
+
+        /**
+         * Same for a few columns next to each other, processed together as lanes so they are read a few adjacent
+         * pixels at a time rather than one pixel per row.
+         *
+         * @param above rows of the window above every element, below the same for rows below it
+         */
+        void columnMaximum(long[] source, long[] target, int x, int width, int lanes, int height, int above, int below) {
+            above = Math.min(above, height - 1);
+            below = Math.min(below, height - 1);
+            int window = above + below + 1;
+            int paddedLength = (height + window - 1 + window - 1) / window * window;
+            ensure(paddedLength * lanes);
+            for (int i = 0; i < paddedLength; i++) {
+                int sourceY = i - above;
+                if (sourceY >= 0 && sourceY < height) {
+                    System.arraycopy(source, sourceY * width + x, padded, i * lanes, lanes);
+                } else {
+                    for (int lane = i * lanes; lane < (i + 1) * lanes; lane++) {
+                        padded[lane] = OUTSIDE;
+                    }
+                }
+            }
+            int blockSize = window * lanes;
+            for (int blockStart = 0; blockStart < paddedLength * lanes; blockStart += blockSize) {
+                int lastRow = blockStart + blockSize - lanes;
+                System.arraycopy(padded, blockStart, prefix, blockStart, lanes);
+                for (int i = blockStart + lanes; i < blockStart + blockSize; i++) {
+                    prefix[i] = Math.max(prefix[i - lanes], padded[i]);
+                }
+                System.arraycopy(padded, lastRow, suffix, lastRow, lanes);
+                for (int i = lastRow - 1; i >= blockStart; i--) {
+                    suffix[i] = Math.max(suffix[i + lanes], padded[i]);
+                }
+            }
+            int lastOffset = (window - 1) * lanes;
+            for (int y = 0; y < height; y++) {
+                int read = y * lanes;
+                int write = y * width + x;
+                for (int lane = 0; lane < lanes; lane++) {
+                    target[write + lane] = Math.max(suffix[read + lane], prefix[read + lane + lastOffset]);
+                }
+            }
+        }
+
+        private void ensure(int length) {
+            if (padded.length < length) {
+                padded = new long[length];
+                prefix = new long[length];
+                suffix = new long[length];
+            }
+        }
+    }
+}
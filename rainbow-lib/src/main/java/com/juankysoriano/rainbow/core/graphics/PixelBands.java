@@ -0,0 +1,71 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import com.juankysoriano.rainbow.utils.schedulers.RainbowScheduler;
+import com.juankysoriano.rainbow.utils.schedulers.RainbowSchedulers;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the passes over the pixels of large images in bands, run on a scheduler shared by all images.
+ * <p/>
+ * Small images, or devices with a single core, run every pass on the calling thread.
+ */
+final class PixelBands {
+    private static final int MIN_PARALLEL_PIXELS = 256 * 256;
+    private static final int MIN_ROWS_PER_BAND = 16;
+    private static PixelBands defaultBands;
+
+    private final RainbowScheduler scheduler;
+    private final int maxBands;
+
+    static synchronized PixelBands getDefault() {
+        if (defaultBands == null) {
+            int processors = Runtime.getRuntime().availableProcessors();
+            RainbowScheduler scheduler = processors > 1
+                    ? RainbowSchedulers.multiThreaded("RainbowImage-Bands", RainbowSchedulers.Priority.NORMAL, processors)
+                    : null;
+            defaultBands = new PixelBands(scheduler, processors);
+        }
+        return defaultBands;
+    }
+
+    private PixelBands(RainbowScheduler scheduler, int maxBands) {
+        this.scheduler = scheduler;
+        this.maxBands = maxBands;
+    }
+
+    /**
+     * @return number of bands worth splitting a pass over an image of this size in
+     */
+    int count(int width, int height) {
+        if (scheduler == null || width * height < MIN_PARALLEL_PIXELS) {
+            return 1;
+        }
+        return Math.max(1, Math.min(maxBands, height / MIN_ROWS_PER_BAND));
+    }
+
+    /**
+     * Runs the bands of a pass and waits for all of them.
+     */
+    void run(List<Callable<Void>> bands) {
+        try {
+            if (bands.size() == 1) {
+                bands.get(0).call();
+                return;
+            }
+            for (Future<Void> future : scheduler.invokeAll(bands)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Pixel pass interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Pixel pass failed", e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException("Pixel pass failed", e);
+        }
+    }
+}
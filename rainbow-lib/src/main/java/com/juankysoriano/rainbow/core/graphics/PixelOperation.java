@@ -0,0 +1,176 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import com.juankysoriano.rainbow.core.drawing.Modes;
+
+import static com.juankysoriano.rainbow.core.drawing.Modes.Image.ALPHA;
+import static com.juankysoriano.rainbow.core.drawing.Modes.Image.RGB;
+
+/**
+ * Filter that computes every pixel from its own color only, so several of them can run on a few pixels
+ * before moving to the next ones.
+ */
+abstract class PixelOperation {
+    private static final int ALPHA_MASK = 0xff000000;
+
+    /**
+     * Applies the operation to a run of pixels. Every operation has its own plain loop, which the compiler can
+     * vectorize, rather than a call per pixel.
+     */
+    abstract void apply(int[] pixels, int from, int to);
+
+    /**
+     * @return the operation to run on pixels of the given format, which may differ for alpha images
+     */
+    PixelOperation forFormat(Modes.Image format) {
+        return this;
+    }
+
+    /**
+     * @return format of the image once the operation has run on pixels of the given format
+     */
+    Modes.Image resultFormat(Modes.Image format) {
+        return format;
+    }
+
+    /**
+     * @return the same operation as a lookup, to be merged with the lookups next to it, or null if it has none
+     */
+    ChannelLookup asLookup() {
+        return null;
+    }
+
+    static PixelOperation gray() {
+        return Gray.INSTANCE;
+    }
+
+    static PixelOperation invert() {
+        return Invert.INSTANCE;
+    }
+
+    static PixelOperation opaque() {
+        return Opaque.INSTANCE;
+    }
+
+    static PixelOperation posterize(int levels) {
+        if ((levels < 2) || (levels > 255)) {
+            throw new RuntimeException("Levels must be between 2 and 255 for " + "filter(POSTERIZE, levels)");
+        }
+        return ChannelLookup.posterize(levels);
+    }
+
+    static PixelOperation threshold(float center) {
+        return ChannelLookup.threshold((int) (center * 255));
+    }
+
+    static PixelOperation gamma(float gamma) {
+        if (!(gamma > 0)) {
+            throw new IllegalArgumentException("Developer error, gamma should be greater than 0");
+        }
+        return ChannelLookup.gamma(gamma);
+    }
+
+    static PixelOperation levels(int inputBlack, int inputWhite, int outputBlack, int outputWhite) {
+        if (inputBlack < 0 || inputWhite > 255 || inputBlack >= inputWhite) {
+            throw new IllegalArgumentException("Developer error, input levels should satisfy 0 <= black < white <= 255");
+        }
+        if (outputBlack < 0 || outputBlack > 255 || outputWhite < 0 || outputWhite > 255) {
+            throw new IllegalArgumentException("Developer error, output levels should be between 0 and 255");
+        }
+        return ChannelLookup.levels(inputBlack, inputWhite, outputBlack, outputWhite);
+    }
+
+    static PixelOperation brightnessContrast(float brightness, float contrast) {
+        if (brightness < -1 || brightness > 1 || !(contrast >= 0)) {
+            throw new IllegalArgumentException("Developer error, brightness should be between -1 and 1 and contrast not negative");
+        }
+        return ChannelLookup.brightnessContrast(brightness, contrast);
+    }
+
+    static PixelOperation curves(int[] red, int[] green, int[] blue) {
+        checkCurve(red);
+        checkCurve(green);
+        checkCurve(blue);
+        return ChannelLookup.ofCurves(red, green, blue);
+    }
+
+    private static void checkCurve(int[] curve) {
+        if (curve.length != ChannelLookup.SIZE) {
+            throw new IllegalArgumentException("Developer error, curves should have a value for each of the 256 channel values");
+        }
+        for (int value : curve) {
+            if (value < 0 || value > 255) {
+                throw new IllegalArgumentException("Developer error, curve values should be between 0 and 255");
+            }
+        }
+    }
+
+    private static final class Gray extends PixelOperation {
+        static final Gray INSTANCE = new Gray();
+
+        @Override
+        void apply(int[] pixels, int from, int to) {
+            for (int index = from; index < to; index++) {
+                int color = pixels[index];
+                int lum = (77 * (color >> 16 & 0xff) + 151 * (color >> 8 & 0xff) + 28 * (color & 0xff)) >> 8;
+                pixels[index] = (color & ALPHA_MASK) | lum << 16 | lum << 8 | lum;
+            }
+        }
+
+        @Override
+        PixelOperation forFormat(Modes.Image format) {
+            return format == ALPHA ? AlphaToGray.INSTANCE : this;
+        }
+    }
+
+    /**
+     * Alpha images become opaque gray images, darker where they were more opaque.
+     */
+    private static final class AlphaToGray extends PixelOperation {
+        static final AlphaToGray INSTANCE = new AlphaToGray();
+
+        @Override
+        void apply(int[] pixels, int from, int to) {
+            for (int index = from; index < to; index++) {
+                int col = 255 - pixels[index];
+                pixels[index] = 0xff000000 | (col << 16) | (col << 8) | col;
+            }
+        }
+
+        @Override
+        Modes.Image resultFormat(Modes.Image format) {
+            return RGB;
+        }
+    }
+
+    private static final class Invert extends PixelOperation {
+        static final Invert INSTANCE = new Invert();
+
+        @Override
+        void apply(int[] pixels, int from, int to) {
+            for (int index = from; index < to; index++) {
+                pixels[index] ^= 0xffffff;
+            }
+        }
+
+        @Override
+        ChannelLookup asLookup() {
+            return ChannelLookup.invert();
+        }
+    }
+
+    private static final class Opaque extends PixelOperation {
+        static final Opaque INSTANCE = new Opaque();
+
+        @Override
+        void apply(int[] pixels, int from, int to) {
+            for (int index = from; index < to; index++) {
+                pixels[index] |= 0xff000000;
+            }
+        }
+
+        @Override
+        Modes.Image resultFormat(Modes.Image format) {
+            return RGB;
+        }
+    }
+}
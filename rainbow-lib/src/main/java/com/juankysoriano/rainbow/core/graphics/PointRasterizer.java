@@ -0,0 +1,115 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import android.graphics.Bitmap;
+
+import com.juankysoriano.rainbow.core.drawing.Modes;
+
+/**
+ * Plots single pixel points straight into the pixels of a bitmap, skipping the per point overhead of Canvas.
+ * <p/>
+ * Only the rows between the first and the last point are read into a scratch buffer and written back, so
+ * points close to each other cost little more than the points themselves.
+ * <p/>
+ * Blending is done on premultiplied colors, so it works on the four channels alike: BLEND is source over
+ * and ADD is a saturated sum.
+ */
+final class PointRasterizer {
+    private int[] rows = new int[0];
+    private int top;
+    private int bottom;
+
+    /**
+     * @param xy     packed x, y coordinates, already in bitmap space
+     * @param colors one 0xAARRGGBB color per point, or null to use {@code color} for all of them
+     * @return whether any point was inside the bitmap, then the rows written are given by getTop and getBottom
+     */
+    boolean plot(Bitmap bitmap,
+                 float[] xy, int offset, int count,
+                 int[] colors, int colorOffset, int color, Modes.Blend mode) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (!measure(xy, offset, count, width, height)) {
+            return false;
+        }
+        int size = (bottom - top) * width;
+        if (rows.length < size) {
+            rows = new int[size];
+        }
+        bitmap.getPixels(rows, 0, width, 0, top, width, bottom - top);
+
+        boolean add = mode == Modes.Blend.ADD;
+        int pixel = RainbowPixelView.fromArgb(color);
+        for (int i = 0; i < count; i++) {
+            int x = (int) Math.floor(xy[(offset + i) * 2] + 0.5f);
+            int y = (int) Math.floor(xy[(offset + i) * 2 + 1] + 0.5f);
+            if (x < 0 || y < 0 || x >= width || y >= height) {
+                continue;
+            }
+            if (colors != null) {
+                pixel = RainbowPixelView.fromArgb(colors[colorOffset + i]);
+            }
+            int index = (y - top) * width + x;
+            int dst = RainbowPixelView.fromArgb(rows[index]);
+            rows[index] = RainbowPixelView.toArgb(add ? add(dst, pixel) : over(dst, pixel));
+        }
+
+        bitmap.setPixels(rows, 0, width, 0, top, width, bottom - top);
+        return true;
+    }
+
+    private boolean measure(float[] xy, int offset, int count, int width, int height) {
+        top = height;
+        bottom = 0;
+        for (int i = 0; i < count; i++) {
+            int x = (int) Math.floor(xy[(offset + i) * 2] + 0.5f);
+            int y = (int) Math.floor(xy[(offset + i) * 2 + 1] + 0.5f);
+            if (x < 0 || y < 0 || x >= width || y >= height) {
+                continue;
+            }
+            top = Math.min(top, y);
+            bottom = Math.max(bottom, y + 1);
+        }
+        return top < bottom;
+    }
+
+    /**
+     * @return first row written by the last plot, inclusive
+     */
+    int getTop() {
+        return top;
+    }
+
+    /**
+     * @return last row written by the last plot, exclusive
+     */
+    int getBottom() {
+        return bottom;
+    }
+
+    private static int over(int dst, int src) {
+        int alpha = src >>> 24;
+        if (alpha == 0xFF) {
+            return src;
+        }
+        int inverse = 0xFF - alpha;
+        int rb = scale((dst & 0xFF00FF) * inverse);
+        int ag = scale(((dst >>> 8) & 0xFF00FF) * inverse);
+        return src + (rb | ag << 8);
+    }
+
+    /**
+     * Divides by 255 with rounding two channels multiplied at once, each one in its own 16 bits.
+     */
+    private static int scale(int channels) {
+        int t = channels + 0x800080;
+        return ((t + ((t >>> 8) & 0xFF00FF)) >>> 8) & 0xFF00FF;
+    }
+
+    private static int add(int dst, int src) {
+        int rb = (dst & 0xFF00FF) + (src & 0xFF00FF);
+        int ag = ((dst >>> 8) & 0xFF00FF) + ((src >>> 8) & 0xFF00FF);
+        rb |= ((rb >>> 8) & 0x010001) * 0xFF;
+        ag |= ((ag >>> 8) & 0x010001) * 0xFF;
+        return (rb & 0xFF00FF) | (ag & 0xFF00FF) << 8;
+    }
+}
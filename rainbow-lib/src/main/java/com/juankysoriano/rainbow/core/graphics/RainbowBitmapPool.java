@@ -0,0 +1,213 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Recycles the bitmaps allocated by the graphics package, so animated sketches do not churn large native
+ * allocations every frame.
+ * <p/>
+ * Bitmaps are kept by size and config. Acquired bitmaps are always mutable and cleared to transparent, as
+ * freshly created ones. Only bitmaps coming from the pool are taken back on release, the ones created
+ * elsewhere are left untouched. Free bitmaps above the memory budget are recycled, least recently used first.
+ * <p/>
+ * A bitmap drawn by several owners, like a surface and the graphics sharing it, is retained by each extra
+ * owner, and only reused once all of them have released it. Bitmaps from the pool must never be recycled
+ * directly, but released.
+ */
+public class RainbowBitmapPool {
+    private static final RainbowBitmapPool DEFAULT = newInstance(Runtime.getRuntime().maxMemory() / 8);
+
+    private final Map<Key, Deque<Bitmap>> freeBitmaps;
+    // Owners of every bitmap created by the pool, 0 while it is free
+    private final Map<Bitmap, Integer> ownedBitmaps;
+    private long maxBytes;
+    private long bytesHeld;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @return the pool used by all graphics and images
+     */
+    public static RainbowBitmapPool getDefault() {
+        return DEFAULT;
+    }
+
+    public static RainbowBitmapPool newInstance(long maxBytes) {
+        return new RainbowBitmapPool(maxBytes);
+    }
+
+    private RainbowBitmapPool(long maxBytes) {
+        this.freeBitmaps = new LinkedHashMap<>(16, 0.75f, true);
+        this.ownedBitmaps = new WeakHashMap<>();
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Deque<Bitmap> bitmaps = freeBitmaps.get(new Key(width, height, config));
+        Bitmap bitmap = bitmaps == null ? null : bitmaps.pollLast();
+        if (bitmap == null) {
+            missCount++;
+            bitmap = Bitmap.createBitmap(width, height, config);
+        } else {
+            hitCount++;
+            bytesHeld -= bitmap.getByteCount();
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+        ownedBitmaps.put(bitmap, 1);
+        return bitmap;
+    }
+
+    /**
+     * Adds an owner to a bitmap in use, which then takes one more release to go back to the pool.
+     *
+     * @return false if the bitmap does not belong to the pool, in which case nothing is done
+     */
+    public synchronized boolean retain(Bitmap bitmap) {
+        Integer owners = bitmap == null ? null : ownedBitmaps.get(bitmap);
+        if (owners == null) {
+            return false;
+        }
+        if (owners == 0) {
+            throw new IllegalArgumentException("Developer error, retaining a bitmap already released to the pool");
+        }
+        ownedBitmaps.put(bitmap, owners + 1);
+        return true;
+    }
+
+    /**
+     * Gives a bitmap back to the pool. It must not be used afterwards by the caller, and is reused once every
+     * owner has released it.
+     *
+     * @return false if the bitmap does not belong to the pool, in which case nothing is done
+     */
+    public synchronized boolean release(Bitmap bitmap) {
+        Integer owners = bitmap == null ? null : ownedBitmaps.get(bitmap);
+        if (owners == null) {
+            return false;
+        }
+        if (owners > 1) {
+            ownedBitmaps.put(bitmap, owners - 1);
+            return true;
+        }
+        if (owners == 0) {
+            return true;
+        }
+        ownedBitmaps.put(bitmap, 0);
+        if (bitmap.isRecycled()) {
+            ownedBitmaps.remove(bitmap);
+            return true;
+        }
+        if (bitmap.getByteCount() > maxBytes) {
+            discard(bitmap);
+            return true;
+        }
+
+        Key key = new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        Deque<Bitmap> bitmaps = freeBitmaps.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            freeBitmaps.put(key, bitmaps);
+        }
+        bitmaps.addLast(bitmap);
+        bytesHeld += bitmap.getByteCount();
+        trimTo(maxBytes);
+        return true;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    /**
+     * Recycles every free bitmap, e.g. when the system is low on memory.
+     */
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    private void trimTo(long bytes) {
+        Iterator<Deque<Bitmap>> iterator = freeBitmaps.values().iterator();
+        while (bytesHeld > bytes && iterator.hasNext()) {
+            Deque<Bitmap> bitmaps = iterator.next();
+            while (bytesHeld > bytes && !bitmaps.isEmpty()) {
+                Bitmap bitmap = bitmaps.pollFirst();
+                bytesHeld -= bitmap.getByteCount();
+                evictionCount++;
+                discard(bitmap);
+            }
+            if (bitmaps.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void discard(Bitmap bitmap) {
+        ownedBitmaps.remove(bitmap);
+        bitmap.recycle();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return bytes taken by the free bitmaps waiting to be reused
+     */
+    public synchronized long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private static class Key {
+        private final int width;
+        private final int height;
+        private final Bitmap.Config config;
+
+        Key(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width && height == key.height && config == key.config;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = width;
+            result = 31 * result + height;
+            result = 31 * result + (config == null ? 0 : config.hashCode());
+            return result;
+        }
+    }
+}
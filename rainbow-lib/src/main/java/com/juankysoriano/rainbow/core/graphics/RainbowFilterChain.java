@@ -0,0 +1,175 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import com.juankysoriano.rainbow.core.drawing.Modes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Point-wise filters applied to an image in a single pass, obtained from {@link RainbowImage#filterChain()}.
+ * <p/>
+ * Every filter of the chain runs on a short run of pixels, still in the cache, before moving to the next run,
+ * and pixels are loaded and updated once for the whole chain, so the image is only read and written once.
+ * Large images are split in bands of rows run in parallel. The result is the same as calling filter() for
+ * each step in order, and the chain can be applied again, for instance on every frame.
+ * <p/>
+ * Filters that map every channel on its own, and thresholds, are compiled into lookup tables, and the ones
+ * next to each other in the chain are merged into a single table.
+ */
+public class RainbowFilterChain {
+    // Runs of pixels small enough to stay in the cache while every operation goes through them
+    private static final int RUN_LENGTH = 2048;
+    private final RainbowImage image;
+    private final List<PixelOperation> operations = new ArrayList<>();
+    private PixelOperation[] compiled;
+    private Modes.Image compiledFormat;
+    private Modes.Image compiledResultFormat;
+
+    RainbowFilterChain(RainbowImage image) {
+        this.image = image;
+    }
+
+    /**
+     * Same as filter(GRAY)
+     */
+    public RainbowFilterChain gray() {
+        return add(PixelOperation.gray());
+    }
+
+    /**
+     * Same as filter(INVERT)
+     */
+    public RainbowFilterChain invert() {
+        return add(PixelOperation.invert());
+    }
+
+    /**
+     * Same as filter(RGB)
+     */
+    public RainbowFilterChain opaque() {
+        return add(PixelOperation.opaque());
+    }
+
+    /**
+     * Same as filter(POSTERIZE, levels)
+     */
+    public RainbowFilterChain posterize(int levels) {
+        return add(PixelOperation.posterize(levels));
+    }
+
+    /**
+     * Same as filter(THRESHOLD, center)
+     */
+    public RainbowFilterChain threshold(float center) {
+        return add(PixelOperation.threshold(center));
+    }
+
+    /**
+     * Gamma correction, values above 1 brighten the midtones and values below 1 darken them
+     */
+    public RainbowFilterChain gamma(float gamma) {
+        return add(PixelOperation.gamma(gamma));
+    }
+
+    /**
+     * Stretches the channel values from the input black to the input white linearly between the output ones,
+     * clamping the values outside. All of them between 0 and 255.
+     */
+    public RainbowFilterChain levels(int inputBlack, int inputWhite, int outputBlack, int outputWhite) {
+        return add(PixelOperation.levels(inputBlack, inputWhite, outputBlack, outputWhite));
+    }
+
+    /**
+     * @param brightness between -1 and 1, added to every channel as a fraction of its range
+     * @param contrast   scale of the distance of every channel to its middle value, 1 leaves it unchanged
+     */
+    public RainbowFilterChain brightnessContrast(float brightness, float contrast) {
+        return add(PixelOperation.brightnessContrast(brightness, contrast));
+    }
+
+    /**
+     * @param red new value, between 0 and 255, of the red channel for each of its 256 values. The same for
+     *            the other channels. Arrays are copied, so they can be reused afterwards.
+     */
+    public RainbowFilterChain curves(int[] red, int[] green, int[] blue) {
+        return add(PixelOperation.curves(red, green, blue));
+    }
+
+    private RainbowFilterChain add(PixelOperation operation) {
+        operations.add(operation);
+        compiled = null;
+        return this;
+    }
+
+    public void apply() {
+        image.loadPixels();
+        run();
+        image.updatePixels();
+    }
+
+    /**
+     * Runs the chain on the pixels of the image, which must be loaded already
+     */
+    void run() {
+        if (operations.isEmpty()) {
+            return;
+        }
+        if (compiled == null || compiledFormat != image.format) {
+            compile(image.format);
+        }
+        final PixelOperation[] resolved = compiled;
+        image.format = compiledResultFormat;
+
+        final int[] pixels = image.pixels;
+        final int width = image.width;
+        final int height = image.height;
+        PixelBands pixelBands = PixelBands.getDefault();
+        int bands = pixelBands.count(width, height);
+        List<Callable<Void>> tasks = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            final int from = width * (height * i / bands);
+            final int to = width * (height * (i + 1) / bands);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    apply(resolved, pixels, from, to);
+                    return null;
+                }
+            });
+        }
+        pixelBands.run(tasks);
+    }
+
+    /**
+     * Picks the operations for the format of the image, and merges the ones next to each other that have a
+     * lookup into a single lookup.
+     */
+    private void compile(Modes.Image format) {
+        compiledFormat = format;
+        List<PixelOperation> merged = new ArrayList<>(operations.size());
+        for (PixelOperation operation : operations) {
+            PixelOperation resolved = operation.forFormat(format);
+            format = resolved.resultFormat(format);
+            int last = merged.size() - 1;
+            ChannelLookup previous = last < 0 ? null : merged.get(last).asLookup();
+            ChannelLookup lookup = resolved.asLookup();
+            if (previous != null && lookup != null && previous.isSeparable()) {
+                merged.set(last, previous.then(lookup));
+            } else {
+                merged.add(resolved);
+            }
+        }
+        compiled = merged.toArray(new PixelOperation[merged.size()]);
+        compiledResultFormat = format;
+    }
+
+    private static void apply(PixelOperation[] operations, int[] pixels, int from, int to) {
+        for (int start = from; start < to; start += RUN_LENGTH) {
+            int end = Math.min(to, start + RUN_LENGTH);
+            for (PixelOperation operation : operations) {
+                operation.apply(pixels, start, end);
+            }
+        }
+    }
+}
@@ -142,7 +142,7 @@ public abstract class RainbowGraphics extends RainbowImage {
     // ........................................................
 
     // Additional stroke properties
-    protected float vertices[][] = new float[DEFAULT_VERTICES][VERTEX_FIELD_COUNT];
+    protected final VertexBuffer vertices = new VertexBuffer(VERTEX_FIELD_COUNT, DEFAULT_VERTICES);
     protected int quality;
     /**
      * true if this is the main drawing surface for a particular sketch. This
@@ -502,6 +502,11 @@ public abstract class RainbowGraphics extends RainbowImage {
      * that it could be either a completely missing function, although other
      * variations of it may still work properly.
      */
+    public RainbowPixelView getPixelView() {
+        showMissingWarning("getPixelView");
+        return null;
+    }
+
     public static void showMissingWarning(String method) {
         showWarning(method + "(), or this particular variation of it, " + "is not available with this renderer.");
     }
@@ -524,17 +529,12 @@ public abstract class RainbowGraphics extends RainbowImage {
     public void vertex(float[] v) {
         vertexCheck();
         curveVertexCount = 0;
-        float[] vertex = vertices[vertexCount];
-        System.arraycopy(v, 0, vertex, 0, VERTEX_FIELD_COUNT);
+        vertices.set(vertexCount, v);
         vertexCount++;
     }
 
     void vertexCheck() {
-        if (vertexCount == vertices.length) {
-            float temp[][] = new float[vertexCount << 1][VERTEX_FIELD_COUNT];
-            System.arraycopy(vertices, 0, temp, 0, vertexCount);
-            vertices = temp;
-        }
+        vertices.ensureCapacity(vertexCount + 1);
     }
 
     public void vertex(float x, float y, float z, float u, float v) {
@@ -570,11 +570,10 @@ public abstract class RainbowGraphics extends RainbowImage {
 
     public void vertex(float x, float y, float z) {
         vertexCheck();
-        float[] vertex = vertices[vertexCount];
         if (shapeMode == POLYGON) {
             if (vertexCount > 0) {
-                float pvertex[] = vertices[vertexCount - 1];
-                if ((Math.abs(pvertex[X] - x) < RainbowMath.EPSILON) && (Math.abs(pvertex[Y] - y) < RainbowMath.EPSILON) && (Math.abs(pvertex[Z] - z) < RainbowMath.EPSILON)) {
+                int previous = vertexCount - 1;
+                if ((Math.abs(vertices.get(previous, X) - x) < RainbowMath.EPSILON) && (Math.abs(vertices.get(previous, Y) - y) < RainbowMath.EPSILON) && (Math.abs(vertices.get(previous, Z) - z) < RainbowMath.EPSILON)) {
                     return;
                 }
             }
@@ -582,49 +581,49 @@ public abstract class RainbowGraphics extends RainbowImage {
 
         curveVertexCount = 0;
 
-        vertex[X] = x;
-        vertex[Y] = y;
-        vertex[Z] = z;
+        vertices.set(vertexCount, X, x);
+        vertices.set(vertexCount, Y, y);
+        vertices.set(vertexCount, Z, z);
 
-        vertex[EDGE] = edge ? 1 : 0;
+        vertices.set(vertexCount, EDGE, edge ? 1 : 0);
 
         boolean textured = textureImage != null;
         if (fill || textured) {
             if (!textured) {
-                vertex[R] = fillR;
-                vertex[G] = fillG;
-                vertex[B] = fillB;
-                vertex[A] = fillA;
+                vertices.set(vertexCount, R, fillR);
+                vertices.set(vertexCount, G, fillG);
+                vertices.set(vertexCount, B, fillB);
+                vertices.set(vertexCount, A, fillA);
             } else {
                 if (tint) {
-                    vertex[R] = tintR;
-                    vertex[G] = tintG;
-                    vertex[B] = tintB;
-                    vertex[A] = tintA;
+                    vertices.set(vertexCount, R, tintR);
+                    vertices.set(vertexCount, G, tintG);
+                    vertices.set(vertexCount, B, tintB);
+                    vertices.set(vertexCount, A, tintA);
                 } else {
-                    vertex[R] = 1;
-                    vertex[G] = 1;
-                    vertex[B] = 1;
-                    vertex[A] = 1;
+                    vertices.set(vertexCount, R, 1);
+                    vertices.set(vertexCount, G, 1);
+                    vertices.set(vertexCount, B, 1);
+                    vertices.set(vertexCount, A, 1);
                 }
             }
         }
 
         if (stroke) {
-            vertex[SR] = strokeR;
-            vertex[SG] = strokeG;
-            vertex[SB] = strokeB;
-            vertex[SA] = strokeA;
-            vertex[SW] = strokeWeight;
+            vertices.set(vertexCount, SR, strokeR);
+            vertices.set(vertexCount, SG, strokeG);
+            vertices.set(vertexCount, SB, strokeB);
+            vertices.set(vertexCount, SA, strokeA);
+            vertices.set(vertexCount, SW, strokeWeight);
         }
 
-        vertex[U] = textureU;
-        vertex[V] = textureV;
+        vertices.set(vertexCount, U, textureU);
+        vertices.set(vertexCount, V, textureV);
 
         if (autoNormal) {
             float norm2 = normalX * normalX + normalY * normalY + normalZ * normalZ;
             if (norm2 < RainbowMath.EPSILON) {
-                vertex[HAS_NORMAL] = 0;
+                vertices.set(vertexCount, HAS_NORMAL, 0);
             } else {
                 if (Math.abs(norm2 - 1) > RainbowMath.EPSILON) {
                     float norm = RainbowMath.sqrt(norm2);
@@ -632,15 +631,15 @@ public abstract class RainbowGraphics extends RainbowImage {
                     normalY /= norm;
                     normalZ /= norm;
                 }
-                vertex[HAS_NORMAL] = 1;
+                vertices.set(vertexCount, HAS_NORMAL, 1);
             }
         } else {
-            vertex[HAS_NORMAL] = 1;
+            vertices.set(vertexCount, HAS_NORMAL, 1);
         }
 
-        vertex[NX] = normalX;
-        vertex[NY] = normalY;
-        vertex[NZ] = normalZ;
+        vertices.set(vertexCount, NX, normalX);
+        vertices.set(vertexCount, NY, normalY);
+        vertices.set(vertexCount, NZ, normalZ);
 
         vertexCount++;
     }
@@ -716,10 +715,9 @@ public abstract class RainbowGraphics extends RainbowImage {
 
     public void quadraticVertex(float cx, float cy, float cz, float x3, float y3, float z3) {
         bezierVertexCheck();
-        float[] prev = vertices[vertexCount - 1];
-        float x1 = prev[X];
-        float y1 = prev[Y];
-        float z1 = prev[Z];
+        float x1 = vertices.get(vertexCount - 1, X);
+        float y1 = vertices.get(vertexCount - 1, Y);
+        float z1 = vertices.get(vertexCount - 1, Z);
 
         bezierVertex(
                 x1 + ((cx - x1) * 2 / 3.0f),
@@ -743,10 +741,9 @@ public abstract class RainbowGraphics extends RainbowImage {
         bezierVertexCheck();
         RMatrix3D draw = bezierDrawMatrix;
 
-        float[] prev = vertices[vertexCount - 1];
-        float x1 = prev[X];
-        float y1 = prev[Y];
-        float z1 = prev[Z];
+        float x1 = vertices.get(vertexCount - 1, X);
+        float y1 = vertices.get(vertexCount - 1, Y);
+        float z1 = vertices.get(vertexCount - 1, Z);
 
         float xplot1 = draw.m10 * x1 + draw.m11 * x2 + draw.m12 * x3 + draw.m13 * x4;
         float xplot2 = draw.m20 * x1 + draw.m21 * x2 + draw.m22 * x3 + draw.m23 * x4;
@@ -831,6 +828,17 @@ public abstract class RainbowGraphics extends RainbowImage {
     public void point(float... vertex) {
     }
 
+    /**
+     * Draws a batch of points.
+     *
+     * @param xy     packed x, y coordinates
+     * @param colors one color per point, or null to use the stroke color
+     * @param mode   BLEND or ADD
+     */
+    public void points(float[] xy, int offset, int count, int[] colors, Modes.Blend mode) {
+        showMissingWarning("points");
+    }
+
     public void line(float x1, float y1, float x2, float y2) {
 
     }
@@ -866,53 +874,52 @@ public abstract class RainbowGraphics extends RainbowImage {
 
     public void vertex(float x, float y) {
         vertexCheck();
-        float[] vertex = vertices[vertexCount];
 
         curveVertexCount = 0;
 
-        vertex[X] = x;
-        vertex[Y] = y;
-        vertex[Z] = 0;
+        vertices.set(vertexCount, X, x);
+        vertices.set(vertexCount, Y, y);
+        vertices.set(vertexCount, Z, 0);
 
-        vertex[EDGE] = edge ? 1 : 0;
+        vertices.set(vertexCount, EDGE, edge ? 1 : 0);
 
         boolean textured = textureImage != null;
         if (fill || textured) {
             if (!textured) {
-                vertex[R] = fillR;
-                vertex[G] = fillG;
-                vertex[B] = fillB;
-                vertex[A] = fillA;
+                vertices.set(vertexCount, R, fillR);
+                vertices.set(vertexCount, G, fillG);
+                vertices.set(vertexCount, B, fillB);
+                vertices.set(vertexCount, A, fillA);
             } else {
                 if (tint) {
-                    vertex[R] = tintR;
-                    vertex[G] = tintG;
-                    vertex[B] = tintB;
-                    vertex[A] = tintA;
+                    vertices.set(vertexCount, R, tintR);
+                    vertices.set(vertexCount, G, tintG);
+                    vertices.set(vertexCount, B, tintB);
+                    vertices.set(vertexCount, A, tintA);
                 } else {
-                    vertex[R] = 1;
-                    vertex[G] = 1;
-                    vertex[B] = 1;
-                    vertex[A] = 1;
+                    vertices.set(vertexCount, R, 1);
+                    vertices.set(vertexCount, G, 1);
+                    vertices.set(vertexCount, B, 1);
+                    vertices.set(vertexCount, A, 1);
                 }
             }
         }
 
         if (stroke) {
-            vertex[SR] = strokeR;
-            vertex[SG] = strokeG;
-            vertex[SB] = strokeB;
-            vertex[SA] = strokeA;
-            vertex[SW] = strokeWeight;
+            vertices.set(vertexCount, SR, strokeR);
+            vertices.set(vertexCount, SG, strokeG);
+            vertices.set(vertexCount, SB, strokeB);
+            vertices.set(vertexCount, SA, strokeA);
+            vertices.set(vertexCount, SW, strokeWeight);
         }
 
-        vertex[U] = textureU;
-        vertex[V] = textureV;
+        vertices.set(vertexCount, U, textureU);
+        vertices.set(vertexCount, V, textureV);
 
         if (autoNormal) {
             float norm2 = normalX * normalX + normalY * normalY + normalZ * normalZ;
             if (norm2 < RainbowMath.EPSILON) {
-                vertex[HAS_NORMAL] = 0;
+                vertices.set(vertexCount, HAS_NORMAL, 0);
             } else {
                 if (Math.abs(norm2 - 1) > RainbowMath.EPSILON) {
                     // The normal vector is not normalized.
@@ -921,15 +928,15 @@ public abstract class RainbowGraphics extends RainbowImage {
                     normalY /= norm;
                     normalZ /= norm;
                 }
-                vertex[HAS_NORMAL] = 1;
+                vertices.set(vertexCount, HAS_NORMAL, 1);
             }
         } else {
-            vertex[HAS_NORMAL] = 1;
+            vertices.set(vertexCount, HAS_NORMAL, 1);
         }
 
-        vertex[NX] = normalX;
-        vertex[NY] = normalY;
-        vertex[NZ] = normalZ;
+        vertices.set(vertexCount, NX, normalX);
+        vertices.set(vertexCount, NY, normalY);
+        vertices.set(vertexCount, NZ, normalZ);
 
         vertexCount++;
     }
@@ -1106,9 +1113,8 @@ public abstract class RainbowGraphics extends RainbowImage {
 
     public void quadraticVertex(float cx, float cy, float x3, float y3) {
         bezierVertexCheck();
-        float[] prev = vertices[vertexCount - 1];
-        float x1 = prev[X];
-        float y1 = prev[Y];
+        float x1 = vertices.get(vertexCount - 1, X);
+        float y1 = vertices.get(vertexCount - 1, Y);
 
         bezierVertex(x1 + ((cx - x1) * 2 / 3.0f), y1 + ((cy - y1) * 2 / 3.0f), x3 + ((cx - x3) * 2 / 3.0f), y3 + ((cy - y3) * 2 / 3.0f), x3, y3);
     }
@@ -1122,9 +1128,8 @@ public abstract class RainbowGraphics extends RainbowImage {
         bezierVertexCheck();
         RMatrix3D draw = bezierDrawMatrix;
 
-        float[] prev = vertices[vertexCount - 1];
-        float x1 = prev[X];
-        float y1 = prev[Y];
+        float x1 = vertices.get(vertexCount - 1, X);
+        float y1 = vertices.get(vertexCount - 1, Y);
 
         float xplot1 = draw.m10 * x1 + draw.m11 * x2 + draw.m12 * x3 + draw.m13 * x4;
         float xplot2 = draw.m20 * x1 + draw.m21 * x2 + draw.m22 * x3 + draw.m23 * x4;
@@ -30,12 +30,13 @@ import android.graphics.Paint.Style;
 import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffColorFilter;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.Xfermode;
 import android.graphics.drawable.Drawable;
 
 import com.juankysoriano.rainbow.core.drawing.Modes;
-import com.juankysoriano.rainbow.core.drawing.RainbowTextureView;
 import com.juankysoriano.rainbow.core.matrix.RMatrix;
 import com.juankysoriano.rainbow.core.matrix.RMatrix2D;
 import com.juankysoriano.rainbow.utils.RainbowMath;
@@ -49,6 +50,14 @@ import static com.juankysoriano.rainbow.core.drawing.Modes.Shape.*;
  * (desktop) version of Processing.
  */
 public class RainbowGraphics2D extends RainbowGraphics {
+    /**
+     * Above this fraction of the surface being damaged, the whole frame is presented
+     */
+    public static final float DEFAULT_PARTIAL_PRESENTATION_THRESHOLD = 0.5f;
+    /**
+     * Same format as the screen, so neither pixel access nor presenting frames needs any conversion
+     */
+    public static final Config DEFAULT_SURFACE_FORMAT = Config.ARGB_8888;
 
     /**
      * The temporary path object that does most of the drawing work. If there
@@ -77,6 +86,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
     private Paint tintPaint;
     private Paint strokePaint;
     private Paint fillPaint;
+    private Xfermode addXfermode;
 
     private Bitmap bitmap;
     private Bitmap overlayBitmap;
@@ -84,11 +94,26 @@ public class RainbowGraphics2D extends RainbowGraphics {
     private Canvas canvas;
     private Rect realRect;
     private Rect scaledRect;
+    private volatile RainbowPresenter presenter;
+    private volatile int presentationDepth = RainbowPresenter.DOUBLE_BUFFERED;
+    private DamageRegion damageRegion;
+    private RainbowPixelView pixelView;
+    private PointRasterizer pointRasterizer;
+    private float[] mappedPoints;
+    private Config surfaceFormat = DEFAULT_SURFACE_FORMAT;
+    private float partialPresentationThreshold = DEFAULT_PARTIAL_PRESENTATION_THRESHOLD;
+    private final android.graphics.Matrix damageMatrix;
+    private final RectF damageRect;
+    private final Rect frameDamage;
 
     public RainbowGraphics2D() {
         transform = new float[9];
         path = new Path();
         rect = new RectF();
+        damageRegion = new DamageRegion();
+        damageMatrix = new android.graphics.Matrix();
+        damageRect = new RectF();
+        frameDamage = new Rect();
         initPaints();
     }
 
@@ -96,12 +121,16 @@ public class RainbowGraphics2D extends RainbowGraphics {
      * Convenience method to create graphics for an already created bitmap.
      * Useful in some situations, like when you want two separate drawers working on the same bitmap
      * For example a drawer for the input controller and one for the sketch
+     * <p/>
+     * A bitmap from the {@link RainbowBitmapPool} is retained until these graphics are recycled, so it is not
+     * reused while they can still draw on it.
      *
      * @param bitmap to be used for this graphics
      * @return the created RainbowGraphics2D
      */
     public static RainbowGraphics2D createFor(Bitmap bitmap, float scaleFactor) {
         RainbowGraphics2D graphics2D = new RainbowGraphics2D();
+        RainbowBitmapPool.getDefault().retain(bitmap);
         graphics2D.bitmap = bitmap;
         graphics2D.width = bitmap.getWidth();
         graphics2D.height = bitmap.getHeight();
@@ -112,6 +141,20 @@ public class RainbowGraphics2D extends RainbowGraphics {
         return graphics2D;
     }
 
+    /**
+     * Convenience method to create graphics drawing on the same bitmap as an already created graphics.
+     * Unlike {@link #createFor(Bitmap, float)}, whatever gets drawn is tracked as damage of the given graphics,
+     * so it is taken into account when that one presents partial frames.
+     *
+     * @param graphics whose bitmap will be used for this graphics
+     * @return the created RainbowGraphics2D
+     */
+    public static RainbowGraphics2D createFor(RainbowGraphics2D graphics, float scaleFactor) {
+        RainbowGraphics2D graphics2D = createFor(graphics.getBitmap(), scaleFactor);
+        graphics2D.damageRegion = graphics.damageRegion;
+        return graphics2D;
+    }
+
     /**
      * Called in response to a resize event, handles setting the new width and
      * height internally, as well as re-allocating the pixel buffer for the new
@@ -136,18 +179,140 @@ public class RainbowGraphics2D extends RainbowGraphics {
     }
 
     private void initBitmaps() {
-        setBitmap(Bitmap.createBitmap(parent.getWidth(), parent.getHeight(), Config.ARGB_4444));
+        pixelView = null;
+        replaceBitmap(RainbowBitmapPool.getDefault().acquire(parent.getWidth(), parent.getHeight(), surfaceFormat));
         realRect = new Rect(0, 0, (int) (width / scaleFactor), (int) (height / scaleFactor));
         scaledRect = new Rect(0, 0, width, height);
         if (primarySurface) {
             paintParentBackground();
             bitmap.prepareToDraw();
             canvas = new Canvas(bitmap);
+            damageRegion.addAll();
+            initPresenter();
         } else {
             canvas = new Canvas(super.getBitmap());
         }
     }
 
+    private void initPresenter() {
+        releasePresenter();
+        presenter = RainbowPresenter.newInstance(parent.getDrawingView(), bitmap, scaledRect, realRect, presentationDepth);
+    }
+
+    private void releasePresenter() {
+        RainbowPresenter presenter = this.presenter;
+        this.presenter = null;
+        if (presenter != null) {
+            presenter.release();
+        }
+    }
+
+    /**
+     * Sets how many frames can be in flight between drawing and the screen, see {@link RainbowPresenter}.
+     * Only meaningful for the primary surface. The presenter is replaced by the drawing thread when the next
+     * frame ends, dropping the frames still in flight under the old one, so that frame is presented in full.
+     *
+     * @param presentationDepth 1 to present synchronously, 2 for double buffering, 3 for triple buffering
+     */
+    public void setPresentationDepth(int presentationDepth) {
+        this.presentationDepth = Math.max(RainbowPresenter.SYNCHRONOUS, presentationDepth);
+    }
+
+    public RainbowPresenter getPresenter() {
+        return presenter;
+    }
+
+    /**
+     * Sets the pixel format of the surface bitmap and of the bitmaps created to draw images on it.
+     * Takes effect the next time the surface is allocated, so it should be chosen before setting its size.
+     *
+     * @param surfaceFormat one of ARGB_8888, RGB_565 or ARGB_4444, default is {@link #DEFAULT_SURFACE_FORMAT}
+     */
+    public void setSurfaceFormat(Config surfaceFormat) {
+        if (surfaceFormat != Config.ARGB_8888 && surfaceFormat != Config.RGB_565 && surfaceFormat != Config.ARGB_4444) {
+            throw new IllegalArgumentException("Unsupported surface format " + surfaceFormat);
+        }
+        this.surfaceFormat = surfaceFormat;
+    }
+
+    public Config getSurfaceFormat() {
+        return surfaceFormat;
+    }
+
+    /**
+     * Images keep their transparency even if the surface has none, as they are blended when drawn.
+     */
+    @Override
+    protected Config imageFormat() {
+        return surfaceFormat == Config.RGB_565 ? Config.ARGB_8888 : surfaceFormat;
+    }
+
+    /**
+     * Sets the fraction of the surface that can be damaged while still presenting only the damaged area.
+     * Use 0 to always present full frames.
+     *
+     * @param threshold between 0 and 1, default is {@link #DEFAULT_PARTIAL_PRESENTATION_THRESHOLD}
+     */
+    public void setPartialPresentationThreshold(float threshold) {
+        this.partialPresentationThreshold = RainbowMath.constrain(threshold, 0, 1);
+    }
+
+    /**
+     * Marks the whole surface as damaged. Needed when drawing on the bitmap behind the back of this graphics.
+     */
+    public void damageAll() {
+        damageRegion.addAll();
+    }
+
+    /**
+     * Pixel access without full frame copies, see {@link RainbowPixelView}. Once it is in use, its dirty rows are
+     * written back when the frame ends, and the pixels[] array is no longer refreshed by endDraw.
+     *
+     * @return the pixel view of this surface, which must be ARGB_8888
+     */
+    @Override
+    public RainbowPixelView getPixelView() {
+        if (pixelView == null) {
+            pixelView = RainbowPixelView.newInstance(getBitmap(), damageRegion);
+        }
+        return pixelView;
+    }
+
+    private void damage(float x1, float y1, float x2, float y2, float outset) {
+        damageRect.set(Math.min(x1, x2) - outset, Math.min(y1, y2) - outset, Math.max(x1, x2) + outset, Math.max(y1, y2) + outset);
+        canvas.getMatrix(damageMatrix);
+        damageMatrix.mapRect(damageRect);
+        damageRegion.add(damageRect);
+    }
+
+    private void damage(float[] vertex, float outset) {
+        damage(vertex, 0, vertex.length / 2, outset);
+    }
+
+    private void damage(float[] vertex, int offset, int count, float outset) {
+        if (count <= 0) {
+            return;
+        }
+        float left = vertex[offset * 2];
+        float top = vertex[offset * 2 + 1];
+        float right = left;
+        float bottom = top;
+        for (int i = offset * 2 + 2; i < (offset + count) * 2; i += 2) {
+            left = Math.min(left, vertex[i]);
+            right = Math.max(right, vertex[i]);
+            top = Math.min(top, vertex[i + 1]);
+            bottom = Math.max(bottom, vertex[i + 1]);
+        }
+        damage(left, top, right, bottom, outset);
+    }
+
+    /**
+     * Half the stroke plus a pixel for antialiasing, covers any cap or join but long miters.
+     */
+    private float strokeOutset() {
+        return stroke ? strokeWeight / 2 + 1 : 1;
+    }
+
     private void paintParentBackground() {
         Drawable parentBackground = parent.getDrawingView().getBackground();
         if (parentBackground != null) {
@@ -163,9 +328,8 @@ public class RainbowGraphics2D extends RainbowGraphics {
 
     @Override
     public void setBitmap(Bitmap bitmap) {
-        if (primarySurface && !hasBitmap()) {
+        if (primarySurface) {
             this.bitmap = bitmap;
-
         } else {
             super.setBitmap(bitmap);
         }
@@ -178,6 +342,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
         strokePaint.setStrokeCap(Paint.Cap.ROUND);
         strokePaint.setStyle(Style.STROKE);
         tintPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        addXfermode = new PorterDuffXfermode(PorterDuff.Mode.ADD);
     }
 
     @Override
@@ -187,9 +352,12 @@ public class RainbowGraphics2D extends RainbowGraphics {
 
     public void recycle() {
         super.recycle();
+        releasePresenter();
 
         if (bitmap != null) {
-            bitmap.recycle();
+            if (!RainbowBitmapPool.getDefault().release(bitmap)) {
+                bitmap.recycle();
+            }
             bitmap = null;
         }
     }
@@ -212,23 +380,31 @@ public class RainbowGraphics2D extends RainbowGraphics {
 
     @Override
     public void endDraw() {
+        if (pixelView != null) {
+            pixelView.updatePixels();
+        }
         if (primarySurface) {
-            RainbowTextureView textureView = parent.getDrawingView();
-            Canvas screen = textureView.lockCanvas();
-            if (canPaint(screen)) {
-                screen.drawBitmap(bitmap, scaledRect, realRect, null);
-                if (overlayBitmap != null) {
-                    screen.drawBitmap(overlayBitmap, scaledRect, realRect, null);
-                }
-                textureView.unlockCanvasAndPost(screen);
+            RainbowPresenter presenter = this.presenter;
+            if (presenter != null && hasBitmap()) {
+                present(presenter);
             }
-        } else {
+        } else if (pixelView == null) {
             loadPixels();
         }
     }
 
-    private boolean canPaint(Canvas screen) {
-        return screen != null && hasBitmap();
+    private void present(RainbowPresenter presenter) {
+        if (presenter.getDepth() != presentationDepth) {
+            initPresenter();
+            presenter = this.presenter;
+            damageRegion.addAll();
+        }
+        boolean partial = damageRegion.consume(frameDamage, width, height, partialPresentationThreshold);
+        if (!partial) {
+            presenter.present(bitmap, overlayBitmap, null);
+        } else if (!frameDamage.isEmpty() || overlayBitmap != null) {
+            presenter.present(bitmap, overlayBitmap, frameDamage);
+        }
     }
 
     private boolean hasBitmap() {
@@ -243,6 +419,29 @@ public class RainbowGraphics2D extends RainbowGraphics {
         getBitmap().getPixels(pixels, 0, width, 0, 0, width, height);
     }
 
+    /**
+     * Loads only the given region into pixels[], at the same positions it would have with a full load.
+     * The rest of pixels[] keeps whatever it had.
+     */
+    @Override
+    public void loadPixels(int x, int y, int w, int h) {
+        if ((pixels == null) || (pixels.length != width * height)) {
+            pixels = new int[width * height];
+        }
+        Rect region = clipToSurface(x, y, w, h);
+        if (!region.isEmpty()) {
+            getBitmap().getPixels(pixels, region.top * width + region.left, width, region.left, region.top, region.width(), region.height());
+        }
+    }
+
+    private Rect clipToSurface(int x, int y, int w, int h) {
+        Rect region = new Rect(x, y, x + w, y + h);
+        if (!region.intersect(0, 0, width, height)) {
+            region.setEmpty();
+        }
+        return region;
+    }
+
     @Override
     public void beginShape(Modes.Shape mode) {
         shapeMode = mode;
@@ -262,14 +461,9 @@ public class RainbowGraphics2D extends RainbowGraphics {
         } else {
             curveVertexCount = 0;
 
-            if (vertexCount == vertices.length) {
-                float[][] temp = new float[vertexCount << 1][VERTEX_FIELD_COUNT];
-                System.arraycopy(vertices, 0, temp, 0, vertexCount);
-                vertices = temp;
-            }
-
-            vertices[vertexCount][X] = x;
-            vertices[vertexCount][Y] = y;
+            vertexCheck();
+            vertices.set(vertexCount, X, x);
+            vertices.set(vertexCount, Y, y);
             vertexCount++;
 
             switch (shapeMode) {
@@ -301,14 +495,14 @@ public class RainbowGraphics2D extends RainbowGraphics {
     private void vertexQuadStrip(float x, float y) {
         if ((vertexCount >= 4) && ((vertexCount % 2) == 0)) {
             quad(
-                    vertices[vertexCount - 4][X],
-                    vertices[vertexCount - 4][Y],
-                    vertices[vertexCount - 2][X],
-                    vertices[vertexCount - 2][Y],
+                    vertices.get(vertexCount - 4, X),
+                    vertices.get(vertexCount - 4, Y),
+                    vertices.get(vertexCount - 2, X),
+                    vertices.get(vertexCount - 2, Y),
                     x,
                     y,
-                    vertices[vertexCount - 3][X],
-                    vertices[vertexCount - 3][Y]
+                    vertices.get(vertexCount - 3, X),
+                    vertices.get(vertexCount - 3, Y)
             );
         }
     }
@@ -316,12 +510,12 @@ public class RainbowGraphics2D extends RainbowGraphics {
     private void vertexQuads(float x, float y) {
         if ((vertexCount % 4) == 0) {
             quad(
-                    vertices[vertexCount - 4][X],
-                    vertices[vertexCount - 4][Y],
-                    vertices[vertexCount - 3][X],
-                    vertices[vertexCount - 3][Y],
-                    vertices[vertexCount - 2][X],
-                    vertices[vertexCount - 2][Y],
+                    vertices.get(vertexCount - 4, X),
+                    vertices.get(vertexCount - 4, Y),
+                    vertices.get(vertexCount - 3, X),
+                    vertices.get(vertexCount - 3, Y),
+                    vertices.get(vertexCount - 2, X),
+                    vertices.get(vertexCount - 2, Y),
                     x,
                     y
             );
@@ -331,30 +525,30 @@ public class RainbowGraphics2D extends RainbowGraphics {
 
     private void vertexTriangleFan(float x, float y) {
         if (vertexCount >= 3) {
-            triangle(vertices[0][X], vertices[0][Y], vertices[vertexCount - 2][X], vertices[vertexCount - 2][Y], x, y);
+            triangle(vertices.get(0, X), vertices.get(0, Y), vertices.get(vertexCount - 2, X), vertices.get(vertexCount - 2, Y), x, y);
         }
     }
 
     private void vertexTriangleStrip(float x, float y) {
         if (vertexCount >= 3) {
-            triangle(vertices[vertexCount - 2][X], vertices[vertexCount - 2][Y], x,
+            triangle(vertices.get(vertexCount - 2, X), vertices.get(vertexCount - 2, Y), x,
                      y,
-                     vertices[vertexCount - 3][X],
-                     vertices[vertexCount - 3][Y]
+                     vertices.get(vertexCount - 3, X),
+                     vertices.get(vertexCount - 3, Y)
             );
         }
     }
 
     private void vertexTriangles(float x, float y) {
         if ((vertexCount % 3) == 0) {
-            triangle(vertices[vertexCount - 3][X], vertices[vertexCount - 3][Y], vertices[vertexCount - 2][X], vertices[vertexCount - 2][Y], x, y);
+            triangle(vertices.get(vertexCount - 3, X), vertices.get(vertexCount - 3, Y), vertices.get(vertexCount - 2, X), vertices.get(vertexCount - 2, Y), x, y);
             vertexCount = 0;
         }
     }
 
     private void vertexLines(float x, float y) {
         if ((vertexCount % 2) == 0) {
-            line(vertices[vertexCount - 2][X], vertices[vertexCount - 2][Y], x, y);
+            line(vertices.get(vertexCount - 2, X), vertices.get(vertexCount - 2, Y), x, y);
             vertexCount = 0;
         }
     }
@@ -390,27 +584,19 @@ public class RainbowGraphics2D extends RainbowGraphics {
     private void endPointsShape() {
         android.graphics.Matrix m = canvas.getMatrix();
         if (strokeWeight == 1 && m.isIdentity()) {
-            if (screenPoint == null) {
-                screenPoint = new float[2];
-            }
             for (int i = 0; i < vertexCount; i++) {
-                screenPoint[0] = vertices[i][X];
-                screenPoint[1] = vertices[i][Y];
-                m.mapPoints(screenPoint);
-                set(RainbowMath.round(screenPoint[0]), RainbowMath.round(screenPoint[1]), strokeColor);
-                float x = vertices[i][X];
-                float y = vertices[i][Y];
-                set(RainbowMath.round(screenX(x, y)), RainbowMath.round(screenY(x, y)), strokeColor);
+                set(RainbowMath.round(vertices.get(i, X)), RainbowMath.round(vertices.get(i, Y)), strokeColor);
             }
         } else {
             float sw = strokeWeight / 2;
             // temporarily use the stroke Paint as a fill
             strokePaint.setStyle(Style.FILL);
             for (int i = 0; i < vertexCount; i++) {
-                float x = vertices[i][X];
-                float y = vertices[i][Y];
+                float x = vertices.get(i, X);
+                float y = vertices.get(i, Y);
                 rect.set(x - sw, y - sw, x + sw, y + sw);
                 canvas.drawOval(rect, strokePaint);
+                damage(x - sw, y - sw, x + sw, y + sw, 1);
             }
             strokePaint.setStyle(Style.STROKE);
         }
@@ -431,6 +617,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
             return;
         }
         getBitmap().setPixel(x, y, argb);
+        damageRegion.add(x, y, x + 1, y + 1);
     }
 
     @Override
@@ -462,6 +649,10 @@ public class RainbowGraphics2D extends RainbowGraphics {
         if (stroke) {
             canvas.drawPath(path, strokePaint);
         }
+        if (fill || stroke) {
+            path.computeBounds(rect, false);
+            damage(rect.left, rect.top, rect.right, rect.bottom, strokeOutset());
+        }
     }
 
     @Override
@@ -528,10 +719,77 @@ public class RainbowGraphics2D extends RainbowGraphics {
         showDepthWarningXYZ("curveVertex");
     }
 
+    /**
+     * Draws lots of points at once. Points not thicker than a pixel on an ARGB_8888 surface are written straight
+     * into the rows of the bitmap they cover, others are drawn through the canvas.
+     *
+     * @param xy     packed x, y coordinates
+     * @param offset index of the first point
+     * @param count  number of points
+     * @param colors one color per point starting at offset, or null to use the stroke color
+     * @param mode   BLEND or ADD
+     */
+    @Override
+    public void points(float[] xy, int offset, int count, int[] colors, Modes.Blend mode) {
+        if (mode != Modes.Blend.BLEND && mode != Modes.Blend.ADD) {
+            throw new IllegalArgumentException("Only BLEND and ADD are supported for points, not " + mode);
+        }
+        if (!stroke || count <= 0) {
+            return;
+        }
+        if (strokeWeight <= 1 && getBitmap().getConfig() == Config.ARGB_8888) {
+            rasterizePoints(xy, offset, count, colors, mode);
+        } else {
+            drawPoints(xy, offset, count, colors, mode);
+        }
+    }
+
+    private void rasterizePoints(float[] xy, int offset, int count, int[] colors, Modes.Blend mode) {
+        android.graphics.Matrix matrix = canvas.getMatrix();
+        int colorOffset = offset;
+        if (!matrix.isIdentity()) {
+            if (mappedPoints == null || mappedPoints.length < count * 2) {
+                mappedPoints = new float[count * 2];
+            }
+            matrix.mapPoints(mappedPoints, 0, xy, offset * 2, count);
+            xy = mappedPoints;
+            offset = 0;
+        }
+        if (pointRasterizer == null) {
+            pointRasterizer = new PointRasterizer();
+        }
+
+        if (pixelView != null) {
+            pixelView.updatePixels();
+        }
+        Bitmap bitmap = getBitmap();
+        if (pointRasterizer.plot(bitmap, xy, offset, count, colors, colorOffset, strokeColor, mode)) {
+            damageRegion.add(0, pointRasterizer.getTop(), bitmap.getWidth(), pointRasterizer.getBottom());
+        }
+    }
+
+    private void drawPoints(float[] xy, int offset, int count, int[] colors, Modes.Blend mode) {
+        if (mode == Modes.Blend.ADD) {
+            strokePaint.setXfermode(addXfermode);
+        }
+        if (colors == null) {
+            canvas.drawPoints(xy, offset * 2, count * 2, strokePaint);
+        } else {
+            for (int i = 0; i < count; i++) {
+                strokePaint.setColor(colors[offset + i]);
+                canvas.drawPoint(xy[(offset + i) * 2], xy[(offset + i) * 2 + 1], strokePaint);
+            }
+            strokePaint.setColor(strokeColor);
+        }
+        strokePaint.setXfermode(null);
+        damage(xy, offset, count, strokeOutset());
+    }
+
     @Override
     public void point(float... vertex) {
         if (stroke) {
             canvas.drawPoints(vertex, strokePaint);
+            damage(vertex, strokeOutset());
         }
     }
 
@@ -539,6 +797,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
     public void point(float x, float y) {
         if (stroke) {
             canvas.drawPoint(x, y, strokePaint);
+            damage(x, y, x, y, strokeOutset());
         }
     }
 
@@ -546,6 +805,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
     public void line(float... vertex) {
         if (stroke) {
             canvas.drawLines(vertex, strokePaint);
+            damage(vertex, strokeOutset());
         }
     }
 
@@ -553,6 +813,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
     public void line(float x1, float y1, float x2, float y2) {
         if (stroke) {
             canvas.drawLine(x1, y1, x2, y2, strokePaint);
+            damage(x1, y1, x2, y2, strokeOutset());
         }
     }
 
@@ -585,6 +846,9 @@ public class RainbowGraphics2D extends RainbowGraphics {
         if (stroke) {
             canvas.drawRect(x1, y1, x2, y2, strokePaint);
         }
+        if (fill || stroke) {
+            damage(x1, y1, x2, y2, strokeOutset());
+        }
     }
 
     @Override
@@ -610,6 +874,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
 
             float sweep = stop - start;
             rect.set(x, y, x + w, y + h);
+            damage(x, y, x + w, y + h, strokeOutset());
 
             if (mode == Modes.Arc.UNDEFINED) {
                 if (fill) {
@@ -649,6 +914,9 @@ public class RainbowGraphics2D extends RainbowGraphics {
         if (stroke) {
             canvas.drawOval(rect, strokePaint);
         }
+        if (fill || stroke) {
+            damage(x, y, x + w, y + h, strokeOutset());
+        }
     }
 
     /**
@@ -687,7 +955,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
 
         if (src.getBitmap() == null && src.format == ALPHA) {
             // create an alpha normalBitmap for this feller
-            src.setBitmap(Bitmap.createBitmap(src.width, src.height, Config.ARGB_4444));
+            src.replaceBitmap(RainbowBitmapPool.getDefault().acquire(src.width, src.height, imageFormat()));
             int[] px = new int[src.pixels.length];
             for (int i = 0; i < px.length; i++) {
                 px[i] = src.pixels[i] << 24 | 0xFFFFFF;
@@ -697,12 +965,12 @@ public class RainbowGraphics2D extends RainbowGraphics {
         }
 
         if (src.getBitmap() == null || src.width != src.getBitmap().getWidth() || src.height != src.getBitmap().getHeight()) {
-            src.setBitmap(Bitmap.createBitmap(src.width, src.height, Config.ARGB_4444));
+            src.replaceBitmap(RainbowBitmapPool.getDefault().acquire(src.width, src.height, imageFormat()));
             src.modified = true;
         }
         if (src.modified) {
             if (!src.getBitmap().isMutable()) {
-                src.setBitmap(Bitmap.createBitmap(src.width, src.height, Config.ARGB_4444));
+                src.replaceBitmap(RainbowBitmapPool.getDefault().acquire(src.width, src.height, imageFormat()));
             }
             src.getBitmap().setPixels(src.pixels, 0, src.width, 0, 0, src.width, src.height);
             src.modified = false;
@@ -717,6 +985,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
         }
 
         canvas.drawBitmap(src.getBitmap(), imageImplSrcRect, imageImplDstRect, tint ? tintPaint : null);
+        damage(x1, y1, x2, y2, 1);
     }
 
     @Override
@@ -846,21 +1115,26 @@ public class RainbowGraphics2D extends RainbowGraphics {
     @Override
     public void backgroundImpl() {
         canvas.drawColor(backgroundColor);
+        damageRegion.addAll();
     }
 
     /**
-     * Update the pixels[] buffer to the PGraphics image.
+     * Update the given region of the pixels[] buffer to the PGraphics image,
+     * the rest of the image is left untouched.
      * <p/>
      * Unlike in PImage, where updatePixels() only requests that the update
      * happens, in PGraphicsJava2D, this will happen immediately.
      */
     @Override
-    public void updatePixels(int x, int y, int c, int d) {
-        if ((x != 0) || (y != 0) || (c != width) || (d != height)) {
-            // Show a warning message, but continue anyway.
-            showVariationWarning("updatePixels(x, y, w, h)");
+    public void updatePixels(int x, int y, int w, int h) {
+        if ((pixels == null) || (pixels.length != width * height)) {
+            throw new RuntimeException("loadPixels() must be called before updatePixels()");
+        }
+        Rect region = clipToSurface(x, y, w, h);
+        if (!region.isEmpty()) {
+            getBitmap().setPixels(pixels, region.top * width + region.left, width, region.left, region.top, region.width(), region.height());
+            damageRegion.add(region.left, region.top, region.right, region.bottom);
         }
-        updatePixels();
     }
 
     /**
@@ -872,6 +1146,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
     @Override
     public void updatePixels() {
         getBitmap().setPixels(pixels, 0, width, 0, 0, width, height);
+        damageRegion.addAll();
     }
 
     @Override
@@ -901,14 +1176,15 @@ public class RainbowGraphics2D extends RainbowGraphics {
 
         if (src.getBitmap() == null) {
             canvas.drawBitmap(src.pixels, 0, src.width, x, y, src.width, src.height, false, null);
+            damage(x, y, x + src.width, y + src.height, 0);
         } else {
             if (src.width != src.getBitmap().getWidth() || src.height != src.getBitmap().getHeight()) {
-                src.setBitmap(Bitmap.createBitmap(src.width, src.height, Config.ARGB_4444));
+                src.replaceBitmap(RainbowBitmapPool.getDefault().acquire(src.width, src.height, imageFormat()));
                 src.modified = true;
             }
             if (src.modified) {
                 if (!src.getBitmap().isMutable()) {
-                    src.setBitmap(Bitmap.createBitmap(src.width, src.height, Config.ARGB_4444));
+                    src.replaceBitmap(RainbowBitmapPool.getDefault().acquire(src.width, src.height, imageFormat()));
                 }
                 src.getBitmap().setPixels(src.pixels, 0, src.width, 0, 0, src.width, src.height);
                 src.modified = false;
@@ -917,6 +1193,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
             canvas.setMatrix(null); // set to identity
             canvas.drawBitmap(src.getBitmap(), x, y, null);
             canvas.restore();
+            damageRegion.add(x, y, x + src.width, y + src.height);
         }
     }
 
@@ -925,6 +1202,7 @@ public class RainbowGraphics2D extends RainbowGraphics {
         rect.set(sx, sy, sx + sw, sy + sh);
         Rect src = new Rect(dx, dy, dx + dw, dy + dh);
         canvas.drawBitmap(getBitmap(), src, rect, null);
+        damage(sx, sy, sx + sw, sy + sh, 1);
     }
 
     public Paint getFillPaint() {
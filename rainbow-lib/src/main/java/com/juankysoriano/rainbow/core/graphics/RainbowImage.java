@@ -26,6 +26,7 @@ package com.juankysoriano.rainbow.core.graphics;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.Bitmap.Config;
+import android.os.Build;
 
 import com.juankysoriano.rainbow.core.Rainbow;
 import com.juankysoriano.rainbow.core.drawing.Modes;
@@ -37,6 +38,7 @@ import java.io.OutputStream;
 
 import static com.juankysoriano.rainbow.core.drawing.Modes.Blend.REPLACE;
 import static com.juankysoriano.rainbow.core.drawing.Modes.Filter.BLUR;
+import static com.juankysoriano.rainbow.core.drawing.Modes.Filter.FAST_BLUR;
 import static com.juankysoriano.rainbow.core.drawing.Modes.Filter.THRESHOLD;
 import static com.juankysoriano.rainbow.core.drawing.Modes.Image.*;
 
@@ -97,7 +99,7 @@ public class RainbowImage implements Cloneable {
     private int blurRadius;
     private int blurKernelSize;
     private int[] blurKernel;
-    private int[][] blurMult;
+    private float blurApproximationRadius = Float.MAX_VALUE;
 
     /**
      * Create an empty image object, set its format to RGB. The pixel array is
@@ -161,12 +163,41 @@ public class RainbowImage implements Cloneable {
         return bitmap;
     }
 
+    /**
+     * @return format of the bitmaps created for this image when there is none to take it from
+     */
+    protected Config imageFormat() {
+        return Config.ARGB_8888;
+    }
+
+    /**
+     * @return the format of the bitmap, or the fallback when it has none a mutable bitmap can have, like some
+     * decoded bitmaps or hardware ones
+     */
+    static Config drawableFormat(Bitmap bitmap, Config fallback) {
+        Config config = bitmap.getConfig();
+        if (config == null || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Config.HARDWARE)) {
+            return fallback;
+        }
+        return config;
+    }
+
+    /**
+     * The replaced bitmap is left untouched, as it can still be held by whoever got it from {@link #getBitmap()}.
+     */
     public void setBitmap(Bitmap bitmap) {
-        if (this.bitmap == null || !this.bitmap.equals(bitmap)) {
-            this.bitmap = bitmap;
-        } else {
-            this.bitmap.recycle();
-            this.bitmap = bitmap;
+        this.bitmap = bitmap;
+    }
+
+    /**
+     * Like {@link #setBitmap(Bitmap)}, but the replaced bitmap goes back to the {@link RainbowBitmapPool} if it
+     * came from there. Only for bitmaps the graphics package reallocates on its own.
+     */
+    void replaceBitmap(Bitmap bitmap) {
+        Bitmap replaced = getBitmap();
+        setBitmap(bitmap);
+        if (replaced != null && replaced != bitmap) {
+            RainbowBitmapPool.getDefault().release(replaced);
         }
     }
 
@@ -557,7 +588,9 @@ public class RainbowImage implements Cloneable {
 
     public void recycle() {
         if (this.bitmap != null) {
-            this.bitmap.recycle();
+            if (!RainbowBitmapPool.getDefault().release(this.bitmap)) {
+                this.bitmap.recycle();
+            }
             this.pixels = null;
             this.bitmap = null;
         }
@@ -697,10 +730,13 @@ public class RainbowImage implements Cloneable {
             h = (int) (height * diff);
         }
         if (this.bitmap == null) {
-            this.bitmap = Bitmap.createBitmap(pixels, w, h, Config.ARGB_4444);
+            this.bitmap = RainbowBitmapPool.getDefault().acquire(w, h, imageFormat());
+            this.bitmap.setPixels(pixels, 0, w, 0, 0, w, h);
         } else {
             Bitmap newBitmap = Bitmap.createScaledBitmap(this.bitmap, w, h, true);
-            this.bitmap.recycle();
+            if (!RainbowBitmapPool.getDefault().release(this.bitmap)) {
+                this.bitmap.recycle();
+            }
             this.bitmap = newBitmap;
         }
         this.width = w;
@@ -831,9 +867,9 @@ public class RainbowImage implements Cloneable {
         if (pixels == null) {
             if (!bitmap.isMutable()) {
                 if (bitmap != null) {
-                    bitmap = bitmap.copy(Config.ARGB_4444, true);
+                    bitmap = bitmap.copy(drawableFormat(bitmap, imageFormat()), true);
                 } else {
-                    Bitmap copy = bitmap.copy(Config.ARGB_4444, true);
+                    Bitmap copy = bitmap.copy(drawableFormat(bitmap, imageFormat()), true);
                     bitmap.recycle();
                     bitmap = copy;
                 }
@@ -870,6 +906,16 @@ public class RainbowImage implements Cloneable {
         setLoaded();
     }
 
+    /**
+     * Call this when you want to mess with a region of the pixels[] array.
+     * <p/>
+     * Subclasses able to load only that region should override it, by default
+     * everything is loaded.
+     */
+    public void loadPixels(int x, int y, int w, int h) { // ignore
+        loadPixels();
+    }
+
     public void setLoaded() { // ignore
         loaded = true;
     }
@@ -910,11 +956,19 @@ public class RainbowImage implements Cloneable {
         updatePixels();
     }
 
+    /**
+     * @return an empty chain of point-wise filters for this image, applied in a single pass over its pixels
+     */
+    public RainbowFilterChain filterChain() {
+        return new RainbowFilterChain(this);
+    }
+
     /**
      * Method to apply a variety of basic filters to this image.
      * <p/>
      * <UL>
      * <LI>filter(BLUR) provides a basic blur.
+     * <LI>filter(FAST_BLUR) approximates it with box blurs.
      * <LI>filter(GRAY) converts the image to grayscale based on luminance.
      * <LI>filter(INVERT) will invert the color components in the image.
      * <LI>filter(OPAQUE) set all the high bits in the image to opaque
@@ -936,37 +990,23 @@ public class RainbowImage implements Cloneable {
                 filter(BLUR, 1);
                 break;
 
-            case GRAY:
-                if (format == ALPHA) {
-                    for (int i = 0; i < pixels.length; i++) {
-                        int col = 255 - pixels[i];
-                        pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
-                    }
-                    format = RGB;
+            case FAST_BLUR:
+                filter(FAST_BLUR, 1);
+                break;
 
-                } else {
-                    for (int i = 0; i < pixels.length; i++) {
-                        int col = pixels[i];
-                        int lum = (77 * (col >> 16 & 0xff) + 151 * (col >> 8 & 0xff) + 28 * (col & 0xff)) >> 8;
-                        pixels[i] = (col & ALPHA_MASK) | lum << 16 | lum << 8 | lum;
-                    }
-                }
+            case GRAY:
+                filterChain().gray().run();
                 break;
 
             case INVERT:
-                for (int i = 0; i < pixels.length; i++) {
-                    pixels[i] ^= 0xffffff;
-                }
+                filterChain().invert().run();
                 break;
 
             case POSTERIZE:
                 throw new RuntimeException("Use filter(POSTERIZE, int levels) " + "instead of filter(POSTERIZE)");
 
             case RGB:
-                for (int i = 0; i < pixels.length; i++) {
-                    pixels[i] |= 0xff000000;
-                }
-                format = RGB;
+                filterChain().opaque().run();
                 break;
 
             case THRESHOLD:
@@ -991,6 +1031,9 @@ public class RainbowImage implements Cloneable {
      * <UL>
      * <LI>filter(BLUR, int radius) performs a gaussian blur of the specified
      * radius.
+     * <LI>filter(FAST_BLUR, int radius) approximates the same blur with three
+     * box blurs, whose cost does not grow with the radius. Colors are weighted
+     * by their alpha, so transparent pixels do not make halos.
      * <LI>filter(POSTERIZE, int levels) will posterize the image to between 2
      * and 255 levels.
      * <LI>filter(THRESHOLD, float center) allows you to set the center point
@@ -1014,6 +1057,10 @@ public class RainbowImage implements Cloneable {
                 }
                 break;
 
+            case FAST_BLUR:
+                fastBlur(param);
+                break;
+
             case GRAY:
                 throw new RuntimeException("Use filter(GRAY) instead of " + "filter(GRAY, param)");
 
@@ -1024,28 +1071,11 @@ public class RainbowImage implements Cloneable {
                 throw new RuntimeException("Use filter(OPAQUE) instead of " + "filter(OPAQUE, param)");
 
             case POSTERIZE:
-                int levels = (int) param;
-                if ((levels < 2) || (levels > 255)) {
-                    throw new RuntimeException("Levels must be between 2 and 255 for " + "filter(POSTERIZE, levels)");
-                }
-                int levels1 = levels - 1;
-                for (int i = 0; i < pixels.length; i++) {
-                    int rlevel = (pixels[i] >> 16) & 0xff;
-                    int glevel = (pixels[i] >> 8) & 0xff;
-                    int blevel = pixels[i] & 0xff;
-                    rlevel = (((rlevel * levels) >> 8) * 255) / levels1;
-                    glevel = (((glevel * levels) >> 8) * 255) / levels1;
-                    blevel = (((blevel * levels) >> 8) * 255) / levels1;
-                    pixels[i] = ((0xff000000 & pixels[i]) | (rlevel << 16) | (glevel << 8) | blevel);
-                }
+                filterChain().posterize((int) param).run();
                 break;
 
             case THRESHOLD: // greater than or equal to the threshold
-                int thresh = (int) (param * 255);
-                for (int i = 0; i < pixels.length; i++) {
-                    int max = Math.max((pixels[i] & RED_MASK) >> 16, Math.max((pixels[i] & GREEN_MASK) >> 8, (pixels[i] & BLUE_MASK)));
-                    pixels[i] = (pixels[i] & ALPHA_MASK) | ((max < thresh) ? 0x000000 : 0xffffff);
-                }
+                filterChain().threshold(param).run();
                 break;
 
             case ERODE:
@@ -1068,265 +1098,53 @@ public class RainbowImage implements Cloneable {
             blurRadius = radius;
             blurKernelSize = 1 + blurRadius << 1;
             blurKernel = new int[blurKernelSize];
-            blurMult = new int[blurKernelSize][256];
-
-            int bk, bki;
-            int[] bm, bmi;
 
-            for (int i = 1, radiusi = radius - 1; i < radius; i++) {
-                blurKernel[radius + i] = blurKernel[radiusi] = bki = radiusi * radiusi;
-                bm = blurMult[radius + i];
-                bmi = blurMult[radiusi--];
-                for (int j = 0; j < 256; j++) {
-                    bm[j] = bmi[j] = bki * j;
-                }
-            }
-            bk = blurKernel[radius] = radius * radius;
-            bm = blurMult[radius];
-            for (int j = 0; j < 256; j++) {
-                bm[j] = bk * j;
+            for (int i = 1, radiusi = radius - 1; i < radius; i++, radiusi--) {
+                blurKernel[radius + i] = blurKernel[radiusi] = radiusi * radiusi;
             }
+            blurKernel[radius] = radius * radius;
         }
     }
 
-    protected void blurAlpha(float r) {
-        int sum, cb;
-        int read, ri, ym, ymi, bk0;
-        int b2[] = new int[pixels.length];
-        int yi = 0;
-
-        buildBlurKernel(r);
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                cb = sum = 0;
-                read = x - blurRadius;
-                if (read < 0) {
-                    bk0 = -read;
-                    read = 0;
-                } else {
-                    if (read >= width) {
-                        break;
-                    }
-                    bk0 = 0;
-                }
-                for (int i = bk0; i < blurKernelSize; i++) {
-                    if (read >= width) {
-                        break;
-                    }
-                    int c = pixels[read + yi];
-                    int[] bm = blurMult[i];
-                    cb += bm[c & BLUE_MASK];
-                    sum += blurKernel[i];
-                    read++;
-                }
-                ri = yi + x;
-                b2[ri] = cb / sum;
-            }
-            yi += width;
-        }
-
-        yi = 0;
-        ym = -blurRadius;
-        ymi = ym * width;
+    /**
+     * Blurs with a radius of at least this one are approximated by box blurs, whose cost does not depend on
+     * the radius. Disabled by default, as the result is close but not the same.
+     *
+     * @param radius as given to filter(BLUR, radius)
+     */
+    public void setBlurApproximationRadius(float radius) {
+        blurApproximationRadius = radius;
+    }
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                cb = sum = 0;
-                if (ym < 0) {
-                    bk0 = ri = -ym;
-                    read = x;
-                } else {
-                    if (ym >= height) {
-                        break;
-                    }
-                    bk0 = 0;
-                    ri = ym;
-                    read = x + ymi;
-                }
-                for (int i = bk0; i < blurKernelSize; i++) {
-                    if (ri >= height) {
-                        break;
-                    }
-                    int[] bm = blurMult[i];
-                    cb += bm[b2[read]];
-                    sum += blurKernel[i];
-                    ri++;
-                    read += width;
-                }
-                pixels[x + yi] = (cb / sum);
-            }
-            yi += width;
-            ymi += width;
-            ym++;
-        }
+    protected void blurAlpha(float r) {
+        blur(r, BlurEngine.ALPHA_CHANNEL);
     }
 
     protected void blurRGB(float r) {
-        int sum, cr, cg, cb;
-        int read, ri, ym, ymi, bk0;
-        int r2[] = new int[pixels.length];
-        int g2[] = new int[pixels.length];
-        int b2[] = new int[pixels.length];
-        int yi = 0;
-
-        buildBlurKernel(r);
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                cb = cg = cr = sum = 0;
-                read = x - blurRadius;
-                if (read < 0) {
-                    bk0 = -read;
-                    read = 0;
-                } else {
-                    if (read >= width) {
-                        break;
-                    }
-                    bk0 = 0;
-                }
-                for (int i = bk0; i < blurKernelSize; i++) {
-                    if (read >= width) {
-                        break;
-                    }
-                    int c = pixels[read + yi];
-                    int[] bm = blurMult[i];
-                    cr += bm[(c & RED_MASK) >> 16];
-                    cg += bm[(c & GREEN_MASK) >> 8];
-                    cb += bm[c & BLUE_MASK];
-                    sum += blurKernel[i];
-                    read++;
-                }
-                ri = yi + x;
-                r2[ri] = cr / sum;
-                g2[ri] = cg / sum;
-                b2[ri] = cb / sum;
-            }
-            yi += width;
-        }
-
-        yi = 0;
-        ym = -blurRadius;
-        ymi = ym * width;
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                cb = cg = cr = sum = 0;
-                if (ym < 0) {
-                    bk0 = ri = -ym;
-                    read = x;
-                } else {
-                    if (ym >= height) {
-                        break;
-                    }
-                    bk0 = 0;
-                    ri = ym;
-                    read = x + ymi;
-                }
-                for (int i = bk0; i < blurKernelSize; i++) {
-                    if (ri >= height) {
-                        break;
-                    }
-                    int[] bm = blurMult[i];
-                    cr += bm[r2[read]];
-                    cg += bm[g2[read]];
-                    cb += bm[b2[read]];
-                    sum += blurKernel[i];
-                    ri++;
-                    read += width;
-                }
-                pixels[x + yi] = 0xff000000 | (cr / sum) << 16 | (cg / sum) << 8 | (cb / sum);
-            }
-            yi += width;
-            ymi += width;
-            ym++;
-        }
+        blur(r, BlurEngine.RGB_CHANNELS);
     }
 
     protected void blurARGB(float r) {
-        int sum, cr, cg, cb, ca;
-        int read, ri, ym, ymi, bk0;
-        int wh = pixels.length;
-        int r2[] = new int[wh];
-        int g2[] = new int[wh];
-        int b2[] = new int[wh];
-        int a2[] = new int[wh];
-        int yi = 0;
+        blur(r, BlurEngine.ARGB_CHANNELS);
+    }
 
+    private void blur(float r, int channels) {
         buildBlurKernel(r);
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                cb = cg = cr = ca = sum = 0;
-                read = x - blurRadius;
-                if (read < 0) {
-                    bk0 = -read;
-                    read = 0;
-                } else {
-                    if (read >= width) {
-                        break;
-                    }
-                    bk0 = 0;
-                }
-                for (int i = bk0; i < blurKernelSize; i++) {
-                    if (read >= width) {
-                        break;
-                    }
-                    int c = pixels[read + yi];
-                    int[] bm = blurMult[i];
-                    ca += bm[(c & ALPHA_MASK) >>> 24];
-                    cr += bm[(c & RED_MASK) >> 16];
-                    cg += bm[(c & GREEN_MASK) >> 8];
-                    cb += bm[c & BLUE_MASK];
-                    sum += blurKernel[i];
-                    read++;
-                }
-                ri = yi + x;
-                a2[ri] = ca / sum;
-                r2[ri] = cr / sum;
-                g2[ri] = cg / sum;
-                b2[ri] = cb / sum;
-            }
-            yi += width;
+        if (r >= blurApproximationRadius) {
+            BlurEngine.getDefault().boxBlur(pixels, width, height, channels, blurRadius, false);
+        } else {
+            BlurEngine.getDefault().blur(pixels, width, height, channels, blurKernel, blurRadius);
         }
+    }
 
-        yi = 0;
-        ym = -blurRadius;
-        ymi = ym * width;
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                cb = cg = cr = ca = sum = 0;
-                if (ym < 0) {
-                    bk0 = ri = -ym;
-                    read = x;
-                } else {
-                    if (ym >= height) {
-                        break;
-                    }
-                    bk0 = 0;
-                    ri = ym;
-                    read = x + ymi;
-                }
-                for (int i = bk0; i < blurKernelSize; i++) {
-                    if (ri >= height) {
-                        break;
-                    }
-                    int[] bm = blurMult[i];
-                    ca += bm[a2[read]];
-                    cr += bm[r2[read]];
-                    cg += bm[g2[read]];
-                    cb += bm[b2[read]];
-                    sum += blurKernel[i];
-                    ri++;
-                    read += width;
-                }
-                pixels[x + yi] = (ca / sum) << 24 | (cr / sum) << 16 | (cg / sum) << 8 | (cb / sum);
-            }
-            yi += width;
-            ymi += width;
-            ym++;
-        }
+    /**
+     * Same variance, in both directions, as the kernel of {@link #buildBlurKernel(float)}, which is more peaked
+     * at its center. Without its limit on the radius as the cost does not depend on it.
+     */
+    protected void fastBlur(float r) {
+        int radius = Math.max(1, (int) (r * 3.5f));
+        int channels = format == ALPHA ? BlurEngine.ALPHA_CHANNEL : format == ARGB ? BlurEngine.ARGB_CHANNELS : BlurEngine.RGB_CHANNELS;
+        BlurEngine.getDefault().boxBlur(pixels, width, height, channels, radius, true);
     }
 
     /**
@@ -1334,123 +1152,28 @@ public class RainbowImage implements Cloneable {
      * [toxi 050728]
      */
     protected void dilate(boolean isInverted) {
-        int currIdx = 0;
-        int maxIdx = pixels.length;
-        int[] out = new int[maxIdx];
-
-        if (!isInverted) {
-            // erosion (grow light areas)
-            while (currIdx < maxIdx) {
-                int currRowIdx = currIdx;
-                int maxRowIdx = currIdx + width;
-                while (currIdx < maxRowIdx) {
-                    int colOrig, colOut;
-                    colOrig = colOut = pixels[currIdx];
-                    int idxLeft = currIdx - 1;
-                    int idxRight = currIdx + 1;
-                    int idxUp = currIdx - width;
-                    int idxDown = currIdx + width;
-                    if (idxLeft < currRowIdx) {
-                        idxLeft = currIdx;
-                    }
-                    if (idxRight >= maxRowIdx) {
-                        idxRight = currIdx;
-                    }
-                    if (idxUp < 0) {
-                        idxUp = 0;
-                    }
-                    if (idxDown >= maxIdx) {
-                        idxDown = currIdx;
-                    }
-
-                    int colUp = pixels[idxUp];
-                    int colLeft = pixels[idxLeft];
-                    int colDown = pixels[idxDown];
-                    int colRight = pixels[idxRight];
-
-                    // compute luminance
-                    int currLum = 77 * (colOrig >> 16 & 0xff) + 151 * (colOrig >> 8 & 0xff) + 28 * (colOrig & 0xff);
-                    int lumLeft = 77 * (colLeft >> 16 & 0xff) + 151 * (colLeft >> 8 & 0xff) + 28 * (colLeft & 0xff);
-                    int lumRight = 77 * (colRight >> 16 & 0xff) + 151 * (colRight >> 8 & 0xff) + 28 * (colRight & 0xff);
-                    int lumUp = 77 * (colUp >> 16 & 0xff) + 151 * (colUp >> 8 & 0xff) + 28 * (colUp & 0xff);
-                    int lumDown = 77 * (colDown >> 16 & 0xff) + 151 * (colDown >> 8 & 0xff) + 28 * (colDown & 0xff);
-
-                    if (lumLeft > currLum) {
-                        colOut = colLeft;
-                        currLum = lumLeft;
-                    }
-                    if (lumRight > currLum) {
-                        colOut = colRight;
-                        currLum = lumRight;
-                    }
-                    if (lumUp > currLum) {
-                        colOut = colUp;
-                        currLum = lumUp;
-                    }
-                    if (lumDown > currLum) {
-                        colOut = colDown;
-                    }
-                    out[currIdx++] = colOut;
-                }
-            }
-        } else {
-            // dilate (grow dark areas)
-            while (currIdx < maxIdx) {
-                int currRowIdx = currIdx;
-                int maxRowIdx = currIdx + width;
-                while (currIdx < maxRowIdx) {
-                    int colOrig, colOut;
-                    colOrig = colOut = pixels[currIdx];
-                    int idxLeft = currIdx - 1;
-                    int idxRight = currIdx + 1;
-                    int idxUp = currIdx - width;
-                    int idxDown = currIdx + width;
-                    if (idxLeft < currRowIdx) {
-                        idxLeft = currIdx;
-                    }
-                    if (idxRight >= maxRowIdx) {
-                        idxRight = currIdx;
-                    }
-                    if (idxUp < 0) {
-                        idxUp = 0;
-                    }
-                    if (idxDown >= maxIdx) {
-                        idxDown = currIdx;
-                    }
+        MorphologyEngine.getDefault().apply(pixels, width, height, StructuringElement.cross(),
+                isInverted ? Modes.Morphology.ERODE : Modes.Morphology.DILATE);
+    }
 
-                    int colUp = pixels[idxUp];
-                    int colLeft = pixels[idxLeft];
-                    int colDown = pixels[idxDown];
-                    int colRight = pixels[idxRight];
-
-                    // compute luminance
-                    int currLum = 77 * (colOrig >> 16 & 0xff) + 151 * (colOrig >> 8 & 0xff) + 28 * (colOrig & 0xff);
-                    int lumLeft = 77 * (colLeft >> 16 & 0xff) + 151 * (colLeft >> 8 & 0xff) + 28 * (colLeft & 0xff);
-                    int lumRight = 77 * (colRight >> 16 & 0xff) + 151 * (colRight >> 8 & 0xff) + 28 * (colRight & 0xff);
-                    int lumUp = 77 * (colUp >> 16 & 0xff) + 151 * (colUp >> 8 & 0xff) + 28 * (colUp & 0xff);
-                    int lumDown = 77 * (colDown >> 16 & 0xff) + 151 * (colDown >> 8 & 0xff) + 28 * (colDown & 0xff);
-
-                    if (lumLeft < currLum) {
-                        colOut = colLeft;
-                        currLum = lumLeft;
-                    }
-                    if (lumRight < currLum) {
-                        colOut = colRight;
-                        currLum = lumRight;
-                    }
-                    if (lumUp < currLum) {
-                        colOut = colUp;
-                        currLum = lumUp;
-                    }
-                    if (lumDown < currLum) {
-                        colOut = colDown;
-                        currLum = lumDown;
-                    }
-                    out[currIdx++] = colOut;
-                }
-            }
-        }
-        System.arraycopy(out, 0, pixels, 0, maxIdx);
+    /**
+     * Applies a morphological operation, ordering colors by luminance.
+     * <p/>
+     * <UL>
+     * <LI>DILATE replaces every pixel by the lightest of the element around it, growing light areas.
+     * <LI>ERODE replaces it by the darkest one, growing dark areas.
+     * <LI>OPEN erodes and then dilates, removing light details smaller than the element.
+     * <LI>CLOSE dilates and then erodes, filling dark details smaller than the element.
+     * <LI>GRADIENT is the difference between the dilated and eroded image, outlining areas.
+     * <LI>TOP_HAT is the difference between the image and its opening, keeping the light details only.
+     * <LI>BLACK_TOP_HAT is the difference between the closing and the image, keeping the dark details only.
+     * </UL>
+     * Rectangles cost the same whatever their size, other elements grow with their height only.
+     */
+    public void morphology(Modes.Morphology operation, StructuringElement element) {
+        loadPixels();
+        MorphologyEngine.getDefault().apply(pixels, width, height, element, operation);
+        updatePixels();
     }
 
     /**
@@ -1859,12 +1582,10 @@ public class RainbowImage implements Cloneable {
             String lower = path.toLowerCase();
             String extension = lower.substring(lower.lastIndexOf('.') + 1);
             if (extension.equals("jpg") || extension.equals("jpeg")) {
-                Bitmap outgoing = Bitmap.createBitmap(pixels, width, height, Config.ARGB_8888);
-                success = outgoing.compress(CompressFormat.JPEG, 100, output);
+                success = compress(CompressFormat.JPEG, output);
 
             } else if (extension.equals("png")) {
-                Bitmap outgoing = Bitmap.createBitmap(pixels, width, height, Config.ARGB_8888);
-                success = outgoing.compress(CompressFormat.PNG, 100, output);
+                success = compress(CompressFormat.PNG, output);
 
             }
             output.flush();
@@ -1879,6 +1600,15 @@ public class RainbowImage implements Cloneable {
         return success;
     }
 
+    private boolean compress(CompressFormat format, OutputStream output) {
+        RainbowBitmapPool pool = RainbowBitmapPool.getDefault();
+        Bitmap outgoing = pool.acquire(width, height, Config.ARGB_8888);
+        outgoing.setPixels(pixels, 0, width, 0, 0, width, height);
+        boolean success = outgoing.compress(format, 100, output);
+        pool.release(outgoing);
+        return success;
+    }
+
     public int getWidth() {
         return width;
     }
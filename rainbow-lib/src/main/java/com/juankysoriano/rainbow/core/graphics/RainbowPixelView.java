@@ -0,0 +1,271 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import android.graphics.Bitmap;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Persistent pixel access to an ARGB_8888 surface, synchronized lazily with its bitmap.
+ * <p/>
+ * Unlike loadPixels()/updatePixels(), pixels are kept in the native layout of the bitmap so they can be
+ * moved with plain memory copies, and copies only happen when needed: loading does nothing unless something
+ * was drawn since the last load, and updating only writes back the spans marked as dirty.
+ * <p/>
+ * Dirty pixels are tracked as one span per row, from the leftmost to the rightmost one marked, so anything
+ * drawn on the surface inside a span before {@link #updatePixels()} is overwritten by the view.
+ * <p/>
+ * The native layout is premultiplied RGBA in memory, i.e. 0xAABBGGRR, see {@link #toArgb(int)} and
+ * {@link #fromArgb(int)}. {@link #get(int, int)} and {@link #set(int, int, int)} convert on the fly.
+ */
+public class RainbowPixelView {
+    private static final int NOTHING_DIRTY = -1;
+
+    private final Bitmap bitmap;
+    private final DamageRegion damageRegion;
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final IntBuffer buffer;
+    private int[] argbRows;
+    private int[] dirtyRows;
+    private final int[] dirtyLeft;
+    private final int[] dirtyRight;
+    private long loadedVersion = -1;
+    private int dirtyTop = NOTHING_DIRTY;
+    private int dirtyBottom = NOTHING_DIRTY;
+    private int dirtyMinLeft;
+    private int dirtyMaxRight;
+
+    static RainbowPixelView newInstance(Bitmap bitmap, DamageRegion damageRegion) {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            throw new IllegalArgumentException("Pixel view is only available for ARGB_8888 surfaces, not " + bitmap.getConfig());
+        }
+        return new RainbowPixelView(bitmap, damageRegion);
+    }
+
+    private RainbowPixelView(Bitmap bitmap, DamageRegion damageRegion) {
+        this.bitmap = bitmap;
+        this.damageRegion = damageRegion;
+        this.width = bitmap.getWidth();
+        this.height = bitmap.getHeight();
+        this.pixels = new int[width * height];
+        this.buffer = IntBuffer.wrap(pixels);
+        this.dirtyLeft = new int[height];
+        this.dirtyRight = new int[height];
+        clearSpans(0, height);
+    }
+
+    private void clearSpans(int top, int bottom) {
+        Arrays.fill(dirtyLeft, top, bottom, width);
+        Arrays.fill(dirtyRight, top, bottom, 0);
+    }
+
+    /**
+     * Spans marked dirty and not written back yet keep their content, as they will replace the ones of the
+     * bitmap on {@link #updatePixels()} anyway.
+     *
+     * @return the pixels, row by row, in native layout. Pixels written must be marked with
+     * {@link #markDirty(int, int, int, int)} or {@link #markDirty(int, int)}
+     */
+    public int[] loadPixels() {
+        long version = damageRegion.getVersion();
+        if (version != loadedVersion) {
+            if (dirtyTop == NOTHING_DIRTY) {
+                reload();
+            } else {
+                reloadKeepingDirtySpans();
+            }
+            loadedVersion = version;
+        }
+        return pixels;
+    }
+
+    private void reload() {
+        buffer.rewind();
+        bitmap.copyPixelsToBuffer(buffer);
+    }
+
+    private void reloadKeepingDirtySpans() {
+        int offset = dirtyTop * width;
+        int count = (dirtyBottom - dirtyTop) * width;
+        if (dirtyRows == null || dirtyRows.length < count) {
+            dirtyRows = new int[count];
+        }
+        copySpans(pixels, offset, dirtyRows, 0);
+        reload();
+        copySpans(dirtyRows, 0, pixels, offset);
+    }
+
+    private void copySpans(int[] src, int srcOffset, int[] dst, int dstOffset) {
+        for (int y = dirtyTop; y < dirtyBottom; y++) {
+            int left = dirtyLeft[y];
+            int right = dirtyRight[y];
+            if (left < right) {
+                int row = (y - dirtyTop) * width;
+                System.arraycopy(src, srcOffset + row + left, dst, dstOffset + row + left, right - left);
+            }
+        }
+    }
+
+    /**
+     * @param fromRow first row written, inclusive
+     * @param toRow   last row written, exclusive
+     */
+    public void markDirty(int fromRow, int toRow) {
+        markDirty(0, fromRow, width, toRow);
+    }
+
+    /**
+     * @param left   first column written, inclusive
+     * @param top    first row written, inclusive
+     * @param right  last column written, exclusive
+     * @param bottom last row written, exclusive
+     */
+    public void markDirty(int left, int top, int right, int bottom) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(width, right);
+        bottom = Math.min(height, bottom);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        if (dirtyTop == NOTHING_DIRTY) {
+            dirtyTop = top;
+            dirtyBottom = bottom;
+            dirtyMinLeft = left;
+            dirtyMaxRight = right;
+        } else {
+            dirtyTop = Math.min(dirtyTop, top);
+            dirtyBottom = Math.max(dirtyBottom, bottom);
+            dirtyMinLeft = Math.min(dirtyMinLeft, left);
+            dirtyMaxRight = Math.max(dirtyMaxRight, right);
+        }
+        for (int y = top; y < bottom; y++) {
+            dirtyLeft[y] = Math.min(dirtyLeft[y], left);
+            dirtyRight[y] = Math.max(dirtyRight[y], right);
+        }
+    }
+
+    public void markDirty() {
+        markDirty(0, height);
+    }
+
+    public int get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+        return toArgb(loadPixels()[y * width + x]);
+    }
+
+    public void set(int x, int y, int argb) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+        loadPixels()[y * width + x] = fromArgb(argb);
+        markDirty(x, y, x + 1, y + 1);
+    }
+
+    /**
+     * Writes the dirty spans back to the bitmap. Beyond half of the surface everything is copied at once, as a
+     * raw copy of the whole bitmap is cheaper than converting that many rows, unless something was drawn since
+     * the last load, which the other pixels would then overwrite.
+     */
+    public void updatePixels() {
+        if (dirtyTop == NOTHING_DIRTY) {
+            return;
+        }
+        boolean upToDate = loadedVersion == damageRegion.getVersion();
+        int rows = dirtyBottom - dirtyTop;
+        if (upToDate && rows * 2 >= height) {
+            buffer.rewind();
+            bitmap.copyPixelsFromBuffer(buffer);
+        } else {
+            writeSpans();
+        }
+        damageRegion.add(dirtyMinLeft, dirtyTop, dirtyMaxRight, dirtyBottom);
+        if (upToDate) {
+            loadedVersion = damageRegion.getVersion();
+        }
+        clearSpans(dirtyTop, dirtyBottom);
+        dirtyTop = NOTHING_DIRTY;
+        dirtyBottom = NOTHING_DIRTY;
+    }
+
+    /**
+     * Consecutive rows with the same span are written with a single call
+     */
+    private void writeSpans() {
+        int y = dirtyTop;
+        while (y < dirtyBottom) {
+            int left = dirtyLeft[y];
+            int right = dirtyRight[y];
+            int bottom = y + 1;
+            while (bottom < dirtyBottom && dirtyLeft[bottom] == left && dirtyRight[bottom] == right) {
+                bottom++;
+            }
+            if (left < right) {
+                writeSpan(left, y, right, bottom);
+            }
+            y = bottom;
+        }
+    }
+
+    private void writeSpan(int left, int top, int right, int bottom) {
+        int spanWidth = right - left;
+        int count = spanWidth * (bottom - top);
+        if (argbRows == null || argbRows.length < count) {
+            argbRows = new int[count];
+        }
+        int i = 0;
+        for (int y = top; y < bottom; y++) {
+            int offset = y * width + left;
+            for (int x = 0; x < spanWidth; x++) {
+                argbRows[i++] = toArgb(pixels[offset + x]);
+            }
+        }
+        bitmap.setPixels(argbRows, 0, spanWidth, left, top, spanWidth, bottom - top);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @param pixel premultiplied, in native layout
+     * @return the color as used everywhere else, i.e. 0xAARRGGBB
+     */
+    public static int toArgb(int pixel) {
+        int a = pixel >>> 24;
+        int r = pixel & 0xFF;
+        int g = (pixel >> 8) & 0xFF;
+        int b = (pixel >> 16) & 0xFF;
+        if (a != 0xFF && a != 0) {
+            r = Math.min(0xFF, r * 0xFF / a);
+            g = Math.min(0xFF, g * 0xFF / a);
+            b = Math.min(0xFF, b * 0xFF / a);
+        }
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * @param argb color as 0xAARRGGBB
+     * @return the premultiplied pixel in native layout
+     */
+    public static int fromArgb(int argb) {
+        int a = argb >>> 24;
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        if (a != 0xFF) {
+            r = r * a / 0xFF;
+            g = g * a / 0xFF;
+            b = b * a / 0xFF;
+        }
+        return a << 24 | b << 16 | g << 8 | r;
+    }
+}
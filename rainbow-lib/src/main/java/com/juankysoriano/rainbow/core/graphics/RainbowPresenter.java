@@ -0,0 +1,291 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import com.juankysoriano.rainbow.core.drawing.RainbowTextureView;
+import com.juankysoriano.rainbow.utils.schedulers.RainbowScheduler;
+import com.juankysoriano.rainbow.utils.schedulers.RainbowSchedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts the frames of a primary surface to its {@link RainbowTextureView}.
+ * <p/>
+ * The sketch keeps drawing on its own persistent bitmap. When a frame ends, the bitmap is snapshotted into
+ * a free presentation buffer and a dedicated thread performs the scaled blit and the post to the screen,
+ * so the next step can start right away. With a depth of N there are N - 1 presentation buffers, a depth
+ * of 1 presents synchronously on the drawing thread.
+ * <p/>
+ * When all buffers are still waiting to be presented the drawing thread blocks until one is released, or
+ * until the presenter is. How often and how long that happens is reported, as it means presentation is the
+ * bottleneck. An overlay is copied along with the frame, so it can change as soon as the frame ends.
+ * <p/>
+ * Frames can come with the area damaged since the previous one. Then each buffer only refreshes what changed
+ * since its own last snapshot, and only that area is redrawn on the screen, which preserves the rest.
+ */
+public class RainbowPresenter {
+    public static final int SYNCHRONOUS = 1;
+    public static final int DOUBLE_BUFFERED = 2;
+    public static final int TRIPLE_BUFFERED = 3;
+    private static final float NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long RELEASE_CHECK_MILLIS = 100;
+
+    private final RainbowTextureView textureView;
+    private final Rect sourceRect;
+    private final Rect screenRect;
+    private final BlockingQueue<PresentationBuffer> freeBuffers;
+    private final List<PresentationBuffer> buffers;
+    private final RainbowScheduler scheduler;
+    private final int depth;
+    private final Rect screenDirtyRect = new Rect();
+    private volatile boolean released;
+    private volatile long presentedFrameCount;
+    private volatile long blockedFrameCount;
+    private volatile long blockedNanos;
+
+    static RainbowPresenter newInstance(RainbowTextureView textureView, Bitmap bitmap, Rect sourceRect, Rect screenRect, int depth) {
+        int buffers = Math.max(SYNCHRONOUS, depth) - 1;
+        BlockingQueue<PresentationBuffer> freeBuffers = new ArrayBlockingQueue<>(Math.max(1, buffers));
+        RainbowScheduler scheduler = null;
+        if (buffers > 0) {
+            scheduler = RainbowSchedulers.single("Presenter", RainbowSchedulers.Priority.MAX);
+        }
+        RainbowPresenter presenter = new RainbowPresenter(textureView, sourceRect, screenRect, freeBuffers, scheduler, depth);
+        for (int i = 0; i < buffers; i++) {
+            Bitmap.Config config = RainbowImage.drawableFormat(bitmap, Bitmap.Config.ARGB_8888);
+            PresentationBuffer buffer = presenter.new PresentationBuffer(RainbowBitmapPool.getDefault().acquire(bitmap.getWidth(), bitmap.getHeight(), config));
+            presenter.buffers.add(buffer);
+            freeBuffers.add(buffer);
+        }
+        return presenter;
+    }
+
+    private RainbowPresenter(RainbowTextureView textureView,
+                             Rect sourceRect,
+                             Rect screenRect,
+                             BlockingQueue<PresentationBuffer> freeBuffers,
+                             RainbowScheduler scheduler,
+                             int depth) {
+        this.textureView = textureView;
+        this.sourceRect = sourceRect;
+        this.screenRect = screenRect;
+        this.freeBuffers = freeBuffers;
+        this.buffers = new ArrayList<>();
+        this.scheduler = scheduler;
+        this.depth = depth;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @param damage area of the bitmap changed since the previous frame, or null if it has to be fully presented
+     */
+    void present(Bitmap bitmap, Bitmap overlay, Rect damage) {
+        if (released) {
+            return;
+        }
+        if (scheduler == null) {
+            post(bitmap, overlay, screenDirtyRectFor(damage, overlay, screenDirtyRect));
+            return;
+        }
+
+        for (PresentationBuffer buffer : buffers) {
+            buffer.addDamage(damage);
+        }
+        PresentationBuffer buffer = acquireBuffer();
+        if (buffer != null && buffer.snapshot(bitmap, overlay, damage)) {
+            try {
+                scheduler.scheduleNow(buffer);
+            } catch (RejectedExecutionException e) {
+                buffer.recycle();
+            }
+        }
+    }
+
+    /**
+     * Bilinear filtering reads neighbouring pixels, so the damage is widened by a pixel when mapped to the screen.
+     * An overlay can change without notice, so frames with overlay are always fully presented.
+     */
+    private Rect screenDirtyRectFor(Rect damage, Bitmap overlay, Rect out) {
+        if (damage == null || overlay != null) {
+            return null;
+        }
+        float scaleX = screenRect.width() / (float) sourceRect.width();
+        float scaleY = screenRect.height() / (float) sourceRect.height();
+        out.set((int) Math.floor((damage.left - 1) * scaleX),
+                (int) Math.floor((damage.top - 1) * scaleY),
+                (int) Math.ceil((damage.right + 1) * scaleX),
+                (int) Math.ceil((damage.bottom + 1) * scaleY));
+        if (!out.intersect(screenRect)) {
+            out.setEmpty();
+        }
+        return out;
+    }
+
+    private PresentationBuffer acquireBuffer() {
+        PresentationBuffer buffer = freeBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+
+        blockedFrameCount++;
+        long blockStart = System.nanoTime();
+        try {
+            while (!released) {
+                buffer = freeBuffers.poll(RELEASE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            blockedNanos += System.nanoTime() - blockStart;
+        }
+    }
+
+    private void post(Bitmap bitmap, Bitmap overlay, Rect dirtyRect) {
+        if (dirtyRect != null && dirtyRect.isEmpty()) {
+            return;
+        }
+        Canvas screen = dirtyRect == null ? textureView.lockCanvas() : textureView.lockCanvas(dirtyRect);
+        if (screen != null) {
+            screen.drawBitmap(bitmap, sourceRect, screenRect, null);
+            if (overlay != null) {
+                screen.drawBitmap(overlay, sourceRect, screenRect, null);
+            }
+            textureView.unlockCanvasAndPost(screen);
+            presentedFrameCount++;
+        }
+    }
+
+    /**
+     * Buffers whose frame was still queued are dropped along with it, so every buffer is recycled here. One
+     * being posted is recycled once its post ends.
+     */
+    void release() {
+        released = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        freeBuffers.clear();
+        for (PresentationBuffer buffer : buffers) {
+            buffer.recycle();
+        }
+    }
+
+    public long getPresentedFrameCount() {
+        return presentedFrameCount;
+    }
+
+    /**
+     * @return number of frames for which the drawing thread had to wait for a free presentation buffer
+     */
+    public long getBlockedFrameCount() {
+        return blockedFrameCount;
+    }
+
+    public float getBlockedTimeMillis() {
+        return blockedNanos / NANOS_PER_MILLI;
+    }
+
+    private class PresentationBuffer implements Runnable {
+        private final Paint copyPaint;
+        private final Bitmap bitmap;
+        private final Canvas canvas;
+        private final Rect pendingDamage = new Rect();
+        private final Rect dirtyRect = new Rect();
+        private boolean pendingFullDamage = true;
+        private boolean fullyDirty;
+        private boolean recycled;
+        private boolean hasOverlay;
+        private Bitmap overlay;
+        private Canvas overlayCanvas;
+
+        PresentationBuffer(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.canvas = new Canvas(bitmap);
+            this.copyPaint = new Paint();
+            this.copyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        }
+
+        void addDamage(Rect damage) {
+            if (damage == null) {
+                pendingFullDamage = true;
+            } else if (!pendingFullDamage) {
+                pendingDamage.union(damage);
+            }
+        }
+
+        /**
+         * @return false if the buffer was recycled, then there is nothing to present
+         */
+        synchronized boolean snapshot(Bitmap source, Bitmap overlay, Rect damage) {
+            if (recycled) {
+                return false;
+            }
+            if (pendingFullDamage) {
+                canvas.drawBitmap(source, 0, 0, copyPaint);
+            } else if (!pendingDamage.isEmpty()) {
+                canvas.drawBitmap(source, pendingDamage, pendingDamage, copyPaint);
+            }
+            pendingFullDamage = false;
+            pendingDamage.setEmpty();
+            hasOverlay = overlay != null;
+            if (hasOverlay) {
+                copyOverlay(overlay);
+            }
+            this.fullyDirty = screenDirtyRectFor(damage, overlay, dirtyRect) == null;
+            return true;
+        }
+
+        private void copyOverlay(Bitmap source) {
+            if (overlay == null || overlay.getWidth() != source.getWidth() || overlay.getHeight() != source.getHeight()) {
+                RainbowBitmapPool.getDefault().release(overlay);
+                Bitmap.Config config = RainbowImage.drawableFormat(source, Bitmap.Config.ARGB_8888);
+                overlay = RainbowBitmapPool.getDefault().acquire(source.getWidth(), source.getHeight(), config);
+                overlayCanvas = new Canvas(overlay);
+            }
+            overlayCanvas.drawBitmap(source, 0, 0, copyPaint);
+        }
+
+        @Override
+        public synchronized void run() {
+            if (recycled) {
+                return;
+            }
+            if (!released) {
+                post(bitmap, hasOverlay ? overlay : null, fullyDirty ? null : dirtyRect);
+            }
+            if (released) {
+                recycle();
+            } else {
+                freeBuffers.offer(this);
+            }
+        }
+
+        synchronized void recycle() {
+            if (recycled) {
+                return;
+            }
+            recycled = true;
+            RainbowBitmapPool.getDefault().release(bitmap);
+            RainbowBitmapPool.getDefault().release(overlay);
+            overlay = null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+/**
+ * Neighbourhood of every pixel considered by {@link RainbowImage#morphology}, centered on the pixel.
+ * <p/>
+ * Described as a horizontal run of pixels for every row it covers, so it is processed one run at a time.
+ */
+public final class StructuringElement {
+    private static final StructuringElement CROSS = disc(1);
+    private final boolean rectangular;
+    private final int[] before;
+    private final int[] after;
+    private final int top;
+
+    private StructuringElement(boolean rectangular, int[] before, int[] after, int top) {
+        this.rectangular = rectangular;
+        this.before = before;
+        this.after = after;
+        this.top = top;
+    }
+
+    /**
+     * @return a rectangle with the pixel at its center, or just after it for even sizes
+     */
+    public static StructuringElement rectangle(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Developer error, structuring element should be at least 1x1");
+        }
+        int[] before = new int[height];
+        int[] after = new int[height];
+        for (int row = 0; row < height; row++) {
+            before[row] = width >> 1;
+            after[row] = width - 1 - (width >> 1);
+        }
+        return new StructuringElement(true, before, after, height >> 1);
+    }
+
+    /**
+     * @return every pixel whose distance to the center is at most the radius. A radius of 1 is the cross of
+     * filter(ERODE) and filter(DILATE)
+     */
+    public static StructuringElement disc(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Developer error, structuring element radius should not be negative");
+        }
+        int size = 2 * radius + 1;
+        int[] halfWidths = new int[size];
+        for (int row = 0; row < size; row++) {
+            int dy = row - radius;
+            halfWidths[row] = (int) Math.sqrt(radius * radius - dy * dy);
+        }
+        return new StructuringElement(false, halfWidths, halfWidths, radius);
+    }
+
+    static StructuringElement cross() {
+        return CROSS;
+    }
+
+    /**
+     * @return whether every row has the same run, so the element can be applied one axis after the other
+     */
+    boolean isRectangular() {
+        return rectangular;
+    }
+
+    /**
+     * @return whether the element fits in 3x3 pixels around the pixel, few enough to compare them directly
+     */
+    boolean isSmall() {
+        if (before.length > 3 || top > 1 || before.length - 1 - top > 1) {
+            return false;
+        }
+        for (int row = 0; row < before.length; row++) {
+            if (before[row] > 1 || after[row] > 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getHeight() {
+        return before.length;
+    }
+
+    /**
+     * @return rows covered above the pixel
+     */
+    int getTop() {
+        return top;
+    }
+
+    /**
+     * @return pixels covered on the left of the pixel by the given row of the element
+     */
+    int getBefore(int row) {
+        return before[row];
+    }
+
+    /**
+     * @return pixels covered on the right of the pixel by the given row of the element
+     */
+    int getAfter(int row) {
+        return after[row];
+    }
+}
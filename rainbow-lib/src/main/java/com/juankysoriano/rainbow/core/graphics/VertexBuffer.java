@@ -0,0 +1,67 @@
+package com.juankysoriano.rainbow.core.graphics;
+
+/**
+ * Growable storage for the vertices of the shape being built, one array per vertex field.
+ * <p/>
+ * A field only gets its array the first time it is written, so a renderer using just X and Y does not pay
+ * for the other {@link RainbowGraphics#VERTEX_FIELD_COUNT} fields. Arrays are kept between shapes and only
+ * grow, so drawing shapes does not allocate once the largest one has been seen.
+ */
+class VertexBuffer {
+    private final float[][] fields;
+    private int capacity;
+
+    VertexBuffer(int fieldCount, int capacity) {
+        this.fields = new float[fieldCount][];
+        this.capacity = capacity;
+    }
+
+    void ensureCapacity(int vertexCount) {
+        if (vertexCount <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(vertexCount, capacity << 1);
+        for (int field = 0; field < fields.length; field++) {
+            if (fields[field] != null) {
+                float[] grown = new float[newCapacity];
+                System.arraycopy(fields[field], 0, grown, 0, capacity);
+                fields[field] = grown;
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    float get(int vertex, int field) {
+        float[] values = fields[field];
+        return values == null ? 0 : values[vertex];
+    }
+
+    void set(int vertex, int field, float value) {
+        field(field)[vertex] = value;
+    }
+
+    /**
+     * @param values all the fields of a vertex, as many as this buffer was created with
+     */
+    void set(int vertex, float[] values) {
+        for (int field = 0; field < fields.length; field++) {
+            if (values[field] != 0 || fields[field] != null) {
+                field(field)[vertex] = values[field];
+            }
+        }
+    }
+
+    /**
+     * @return the values of the given field for every vertex, for bulk access. Only valid until the buffer grows
+     */
+    float[] field(int field) {
+        if (fields[field] == null) {
+            fields[field] = new float[capacity];
+        }
+        return fields[field];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
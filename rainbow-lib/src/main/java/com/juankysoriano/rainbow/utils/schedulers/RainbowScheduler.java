@@ -1,5 +1,9 @@
 package com.juankysoriano.rainbow.utils.schedulers;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -20,10 +24,21 @@ public class RainbowScheduler {
         scheduler.scheduleAtFixedRate(runnable, 0, delay, timeUnit);
     }
 
+    /**
+     * Runs all the tasks and waits for all of them to finish
+     */
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return scheduler.invokeAll(tasks);
+    }
+
     public boolean isTerminated() {
         return !running;
     }
 
+    public boolean isShutdown() {
+        return scheduler.isShutdown();
+    }
+
     public void shutdown() {
         scheduler.shutdownNow();
         running = false;
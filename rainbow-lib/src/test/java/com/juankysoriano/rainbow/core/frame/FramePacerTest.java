@@ -0,0 +1,144 @@
+package com.juankysoriano.rainbow.core.frame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class FramePacerTest {
+    private static final int DISPLAY_RATE = 60;
+    private static final float ALPHA_TOLERANCE = 0.0001f;
+
+    private Counter steps;
+    private Counter draws;
+    private FramePacer pacer;
+    private ManualFrameClock clock;
+
+    @Before
+    public void setUp() {
+        steps = new Counter();
+        draws = new Counter();
+        pacer = new FramePacer(steps, draws);
+        clock = new ManualFrameClock(DISPLAY_RATE);
+    }
+
+    @Test
+    public void stepsAtTheFrameRateByDefault() {
+        pacer.start(clock);
+        tick(600);
+
+        assertEquals(600, steps.count);
+        assertEquals(600, draws.count);
+    }
+
+    @Test
+    public void keepsAStepRateLowerThanTheFrameRate() {
+        pacer.setRates(30, DISPLAY_RATE);
+        pacer.start(clock);
+        tick(600);
+
+        assertEquals(300, steps.count);
+        assertEquals(600, draws.count);
+    }
+
+    @Test
+    public void keepsAStepRateThatIsNotAMultipleOfTheFrameRate() {
+        pacer.setRates(90, DISPLAY_RATE);
+        pacer.start(clock);
+        tick(600);
+
+        assertEquals(899, steps.count);
+        assertEquals(600, draws.count);
+    }
+
+    @Test
+    public void keepsAStepRateMuchHigherThanTheFrameRate() {
+        pacer.setRates(500, DISPLAY_RATE);
+        pacer.start(clock);
+        tick(600);
+
+        assertEquals(4992, steps.count);
+        assertEquals(600, draws.count);
+    }
+
+    @Test
+    public void ignoresFramesArrivingEarly() {
+        pacer.setRates(30, 30);
+        pacer.start(clock);
+        tick(600);
+
+        assertEquals(300, draws.count);
+        assertEquals(299, pacer.getFrameStats().getFrameCount());
+    }
+
+    @Test
+    public void capsTheCatchUpAfterAStall() {
+        pacer.setMaxCatchUpSteps(4);
+        pacer.start(clock);
+        tick(1);
+        clock.advance(TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(1 + 1 + 4, steps.count);
+        assertEquals(2, draws.count);
+        assertEquals(DISPLAY_RATE - 1 - 4, pacer.getFrameStats().getSkippedStepCount());
+        assertEquals(1, pacer.getFrameStats().getDroppedFrameCount());
+    }
+
+    @Test
+    public void dropsTheBacklogInsteadOfCarryingItOver() {
+        pacer.start(clock);
+        tick(1);
+        clock.advance(TimeUnit.SECONDS.toNanos(1));
+        steps.count = 0;
+        tick(60);
+
+        assertEquals(60, steps.count);
+    }
+
+    /**
+     * At 50 frames per second both intervals are exact in nanoseconds, a step every frame and a quarter
+     */
+    @Test
+    public void interpolatesBetweenStepsInFixedTimestepMode() {
+        clock = new ManualFrameClock(50);
+        pacer.setRates(40, 50);
+        pacer.setFixedTimestep(true);
+        pacer.start(clock);
+        tick(1);
+        assertEquals(1, pacer.getInterpolationAlpha(), ALPHA_TOLERANCE);
+
+        float[] expectedAlphas = {0.8f, 0.6f, 0.4f, 0.2f, 0};
+        int[] expectedSteps = {0, 1, 2, 3, 4};
+        for (int i = 0; i < expectedAlphas.length; i++) {
+            tick(1);
+            assertEquals(expectedSteps[i], steps.count - 1);
+            assertEquals(expectedAlphas[i], pacer.getInterpolationAlpha(), ALPHA_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void doesNotInterpolateOutsideFixedTimestepMode() {
+        pacer.setRates(40, DISPLAY_RATE);
+        pacer.start(clock);
+        tick(2);
+
+        assertEquals(1, pacer.getInterpolationAlpha(), ALPHA_TOLERANCE);
+    }
+
+    private void tick(int frames) {
+        for (int i = 0; i < frames; i++) {
+            clock.tick();
+        }
+    }
+
+    private static class Counter implements Runnable {
+        private int count;
+
+        @Override
+        public void run() {
+            count++;
+        }
+    }
+}